@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+
+public class TestDateEngine extends AndroidTestCase {
+    public static final String LOG_TAG = TestDateEngine.class.getSimpleName();
+
+    private static final int BENCHMARK_CALLS = 1000;
+
+    // The normalization WeatherContract used before DateEngine, kept as the reference.
+    private static long normalizeDateLegacy(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    private static String getFormattedMonthDayLegacy(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+
+    public void testNormalizeDateMatchesTime() {
+        long now = System.currentTimeMillis();
+        // Every few hours for a year either side of now, so DST changes are covered.
+        for (long date = now - 365 * DateUtils.DAY_IN_MILLIS;
+             date < now + 365 * DateUtils.DAY_IN_MILLIS;
+             date += 5 * DateUtils.HOUR_IN_MILLIS + 17 * DateUtils.MINUTE_IN_MILLIS) {
+            assertEquals("Error: Wrong normalized date for " + date,
+                    normalizeDateLegacy(date), DateEngine.normalizeDate(date));
+        }
+    }
+
+    public void testFriendlyStrings() {
+        long today = DateEngine.normalizeDate(System.currentTimeMillis());
+        DateEngine engine = DateEngine.get(mContext);
+        assertEquals(mContext.getString(R.string.today), engine.getDayName(today));
+        assertEquals(mContext.getString(R.string.format_full_friendly_date,
+                        mContext.getString(R.string.today), getFormattedMonthDayLegacy(today)),
+                engine.getFriendlyDayString(today, true));
+
+        long tomorrow = DateEngine.getStartOfJulianDay(DateEngine.getJulianDay(today) + 1);
+        assertEquals(mContext.getString(R.string.tomorrow), engine.getDayName(tomorrow));
+
+        long nextWeek = DateEngine.getStartOfJulianDay(DateEngine.getJulianDay(today) + 8);
+        assertEquals(new SimpleDateFormat("EEE MMM dd").format(nextWeek),
+                engine.getFriendlyDayString(nextWeek, false));
+        assertEquals(getFormattedMonthDayLegacy(nextWeek), engine.getFormattedMonthDay(nextWeek));
+
+        // Cached strings come back as the same instance.
+        assertSame(engine.getFriendlyDayString(nextWeek, false),
+                engine.getFriendlyDayString(nextWeek, false));
+
+        DateEngine.invalidate();
+        assertNotSame(engine, DateEngine.get(mContext));
+    }
+
+    /*
+        Logs how many objects each call allocates, before and after DateEngine.  Filter logcat on
+        TestDateEngine to see the numbers.
+     */
+    @SuppressWarnings("deprecation")
+    public void testAllocationsPerCall() {
+        long today = DateEngine.normalizeDate(System.currentTimeMillis());
+        long[] dates = new long[14];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = DateEngine.getStartOfJulianDay(DateEngine.getJulianDay(today) + i);
+        }
+        DateEngine engine = DateEngine.get(mContext);
+        // Warm the cache, like the first bind of each row would.
+        for (long date : dates) {
+            engine.getFriendlyDayString(date, false);
+        }
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < BENCHMARK_CALLS; i++) {
+                normalizeDateLegacy(dates[i % dates.length] + 1);
+            }
+            int legacyNormalize = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < BENCHMARK_CALLS; i++) {
+                DateEngine.normalizeDate(dates[i % dates.length] + 1);
+            }
+            int engineNormalize = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < BENCHMARK_CALLS; i++) {
+                getFormattedMonthDayLegacy(dates[i % dates.length]);
+            }
+            int legacyFormat = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < BENCHMARK_CALLS; i++) {
+                engine.getFriendlyDayString(dates[i % dates.length], false);
+            }
+            int engineFormat = Debug.getThreadAllocCount();
+
+            Log.i(LOG_TAG, "Allocations per call, normalizeDate: Time " +
+                    (float) legacyNormalize / BENCHMARK_CALLS + ", DateEngine " +
+                    (float) engineNormalize / BENCHMARK_CALLS);
+            Log.i(LOG_TAG, "Allocations per call, formatting: SimpleDateFormat " +
+                    (float) legacyFormat / BENCHMARK_CALLS + ", DateEngine " +
+                    (float) engineFormat / BENCHMARK_CALLS);
+            assertTrue("Error: Cached formatting allocates more than it used to",
+                    engineFormat < legacyFormat);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TestForecastRowsDiff extends AndroidTestCase {
+
+    private static final long CHANGED = -1;
+    private static final long INSERTED = -2;
+
+    /*
+        Replays the notifications on a plain list of ids, the same way RecyclerView would move
+        its views around.
+     */
+    private static class RecordingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        final ArrayList<Long> mIds = new ArrayList<Long>();
+        int mNotifications;
+
+        RecordingAdapter(long[] ids) {
+            for (long id : ids) {
+                mIds.add(id);
+            }
+            registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    mNotifications++;
+                    for (int i = positionStart; i < positionStart + itemCount; i++) {
+                        mIds.set(i, CHANGED);
+                    }
+                }
+
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mNotifications++;
+                    for (int i = 0; i < itemCount; i++) {
+                        mIds.add(positionStart, INSERTED);
+                    }
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mNotifications++;
+                    for (int i = 0; i < itemCount; i++) {
+                        mIds.remove(positionStart);
+                    }
+                }
+
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    mNotifications++;
+                    mIds.add(toPosition, mIds.remove(fromPosition));
+                }
+            });
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.size();
+        }
+    }
+
+    private static final ForecastRowsDiff.ContentComparator UNCHANGED =
+            new ForecastRowsDiff.ContentComparator() {
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return true;
+                }
+            };
+
+    private static RecordingAdapter apply(long[] oldIds, long[] newIds,
+                                          ForecastRowsDiff.ContentComparator comparator) {
+        RecordingAdapter adapter = new RecordingAdapter(oldIds);
+        ForecastRowsDiff.calculate(oldIds, newIds, comparator).dispatchTo(adapter);
+        return adapter;
+    }
+
+    public void testIdenticalListsNeedNoUpdates() {
+        long[] ids = {1, 2, 3, 4};
+        assertTrue(ForecastRowsDiff.calculate(ids, ids, UNCHANGED).isEmpty());
+    }
+
+    public void testNextDaySync() {
+        // Overnight the first day drops off and a new one appears at the end.
+        RecordingAdapter adapter = apply(new long[]{1, 2, 3, 4}, new long[]{2, 3, 4, 5}, UNCHANGED);
+        // The new first row is rebound for the today layout, the rest keep their views.
+        assertEquals(Arrays.asList(CHANGED, 3L, 4L, INSERTED), adapter.mIds);
+        assertEquals(3, adapter.mNotifications);
+    }
+
+    public void testSingleChangedDay() {
+        RecordingAdapter adapter = apply(new long[]{1, 2, 3, 4}, new long[]{1, 2, 3, 4},
+                new ForecastRowsDiff.ContentComparator() {
+                    @Override
+                    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                        return oldPosition != 2;
+                    }
+                });
+        assertEquals(Arrays.asList(1L, 2L, CHANGED, 4L), adapter.mIds);
+        assertEquals(1, adapter.mNotifications);
+    }
+
+    public void testMoveUsesFewestNotifications() {
+        RecordingAdapter adapter = apply(new long[]{1, 2, 3, 4, 5}, new long[]{1, 3, 4, 5, 2},
+                UNCHANGED);
+        assertEquals(Arrays.asList(1L, 3L, 4L, 5L, 2L), adapter.mIds);
+        assertEquals(1, adapter.mNotifications);
+    }
+
+    public void testMixedUpdates() {
+        long[] oldIds = {10, 20, 30, 40, 50, 60};
+        long[] newIds = {5, 30, 10, 45, 60, 50, 70};
+        RecordingAdapter adapter = apply(oldIds, newIds, UNCHANGED);
+        // 10 leaves the first row, so it's rebound for the regular layout.
+        assertEquals(Arrays.asList(INSERTED, 30L, CHANGED, INSERTED, 60L, 50L, INSERTED),
+                adapter.mIds);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private static final String OTHER_LOCATION = "North Pole";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ForecastSnapshot.delete(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastSnapshot.delete(mContext);
+        super.tearDown();
+    }
+
+    private static ByteBuffer createTestSnapshot() {
+        MatrixCursor locations = new MatrixCursor(new String[]{
+                WeatherContract.LocationEntry._ID,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG});
+        locations.addRow(new Object[]{1L, TestUtilities.TEST_LOCATION, 64.7488, -147.353});
+        locations.addRow(new Object[]{2L, OTHER_LOCATION, 90.0, 0.0});
+
+        MatrixCursor weather = new MatrixCursor(new String[]{
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC});
+        for (int i = 0; i < 3; i++) {
+            weather.addRow(new Object[]{1L, TestUtilities.TEST_DATE + i, 321, 75 + i, 65 + i,
+                    1.2, 1.3, 5.5, 1.1, "Asteroids"});
+        }
+        weather.addRow(new Object[]{2L, TestUtilities.TEST_DATE, 600, -10, -20,
+                1.2, 1.3, 5.5, 1.1, "Snow"});
+        return ForecastSnapshot.encode(locations, weather);
+    }
+
+    public void testRoundTrip() {
+        ByteBuffer buffer = createTestSnapshot();
+        assertTrue("Error: Encoded snapshot doesn't validate", ForecastSnapshot.isValid(buffer));
+        assertTrue(ForecastSnapshot.write(ForecastSnapshot.getFile(mContext), buffer));
+
+        ForecastSnapshot snapshot = ForecastSnapshot.open(mContext);
+        assertNotNull("Error: Couldn't open the snapshot we just wrote", snapshot);
+        assertEquals(2, snapshot.getLocationCount());
+
+        int location = snapshot.findLocation(TestUtilities.TEST_LOCATION);
+        assertEquals(0, location);
+        assertEquals(3, snapshot.getDayCount(location));
+        assertEquals(1, snapshot.findFirstDay(location, TestUtilities.TEST_DATE + 1));
+        assertEquals(TestUtilities.TEST_DATE + 2, snapshot.getDate(location, 2));
+        assertEquals(321, snapshot.getWeatherId(location, 2));
+        assertEquals(77.0, snapshot.getMaxTemp(location, 2), 0.001);
+        assertEquals(67.0, snapshot.getMinTemp(location, 2), 0.001);
+        assertEquals("Asteroids", snapshot.getShortDesc(location, 2));
+        assertEquals(64.7488, snapshot.getCoordLat(location), 0.0001);
+
+        int other = snapshot.findLocation(OTHER_LOCATION);
+        assertEquals(1, other);
+        assertEquals(1, snapshot.getDayCount(other));
+        assertEquals(600, snapshot.getWeatherId(other, 0));
+        assertEquals("Snow", snapshot.getShortDesc(other, 0));
+
+        assertEquals(-1, snapshot.findLocation("Nowhere"));
+    }
+
+    public void testCorruptSnapshotIsRejected() throws Exception {
+        File file = ForecastSnapshot.getFile(mContext);
+        assertTrue(ForecastSnapshot.write(file, createTestSnapshot()));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long offset = ForecastSnapshot.HEADER_SIZE + 2 * ForecastSnapshot.LOCATION_RECORD_SIZE;
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+        // Make sure the cached mapping isn't handed back to us.
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertNull("Error: Snapshot with a bad checksum was accepted",
+                ForecastSnapshot.open(mContext));
+    }
+}
@@ -512,4 +512,54 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Makes sure the shared projections resolve through the joined provider queries, including
+        the table-qualified _id, so the typed getters read the values we stored.
+     */
+    public void testWeatherCursorProjections() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        Uri weatherUri = mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                weatherValues);
+        long weatherRowId = ContentUris.parseId(weatherUri);
+
+        WeatherCursor weather = WeatherCursor.query(mContext.getContentResolver(),
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE),
+                WeatherCursor.DETAIL_PROJECTION, null, null, null);
+        assertNotNull(weather);
+        assertTrue("Error: No weather for the detail projection", weather.moveToFirst());
+        assertEquals(weatherRowId, weather.getId());
+        assertEquals(WeatherContract.normalizeDate(TestUtilities.TEST_DATE), weather.getDate());
+        assertEquals(321, weather.getWeatherId());
+        assertEquals(75.0, weather.getMaxTemp());
+        assertEquals(65.0, weather.getMinTemp());
+        assertEquals(1.2f, weather.getHumidity());
+        assertEquals(1.3f, weather.getPressure());
+        assertEquals(5.5f, weather.getWindSpeed());
+        assertEquals(1.1f, weather.getDegrees());
+        assertEquals("Asteroids", weather.getShortDesc());
+        assertEquals(TestUtilities.TEST_LOCATION, weather.getLocationSetting());
+        weather.close();
+
+        weather = WeatherCursor.query(mContext.getContentResolver(),
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                WeatherCursor.FORECAST_PROJECTION, null, null, null);
+        assertNotNull(weather);
+        assertTrue("Error: No weather for the forecast projection", weather.moveToFirst());
+        assertEquals(weatherRowId, weather.getId());
+        assertEquals(64.7488, weather.getCoordLat());
+        assertEquals(-147.353, weather.getCoordLong());
+        weather.close();
+
+        LocationCursor location = LocationCursor.query(mContext.getContentResolver(),
+                LocationEntry.CONTENT_URI, LocationCursor.LOCATION_PROJECTION, null, null, null);
+        assertNotNull(location);
+        assertTrue("Error: No location for the location projection", location.moveToFirst());
+        assertEquals(locationRowId, location.getId());
+        assertEquals(TestUtilities.TEST_LOCATION, location.getLocationSetting());
+        assertEquals("North Pole", location.getCityName());
+        location.close();
+    }
 }
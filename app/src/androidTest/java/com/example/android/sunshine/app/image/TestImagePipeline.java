@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.image;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+public class TestImagePipeline extends AndroidTestCase {
+
+    public void testSizeBuckets() {
+        assertEquals(32, ImagePipeline.toBucket(1));
+        assertEquals(64, ImagePipeline.toBucket(64));
+        assertEquals(96, ImagePipeline.toBucket(65));
+        assertEquals(512, ImagePipeline.toBucket(512));
+        assertEquals(640, ImagePipeline.toBucket(513));
+    }
+
+    public void testResourceDecodesAreBoundedAndCached() {
+        ImagePipeline.clearMemory();
+        ImagePipeline pipeline = ImagePipeline.get(mContext);
+        Bitmap first = pipeline.getResource(ImagePipeline.CONSUMER_NOTIFICATION,
+                R.drawable.art_storm, 60);
+        assertNotNull("Error: Couldn't decode the art", first);
+        assertTrue("Error: Decoded art is larger than its size bucket",
+                Math.max(first.getWidth(), first.getHeight()) <= 64);
+
+        // A nearby size falls in the same bucket and reuses the decode
+        Bitmap second = pipeline.getResource(ImagePipeline.CONSUMER_NOTIFICATION,
+                R.drawable.art_storm, 64);
+        assertSame(first, second);
+
+        // Other consumers have their own budget
+        Bitmap widget = pipeline.getResource(ImagePipeline.CONSUMER_WIDGET,
+                R.drawable.art_storm, 64);
+        assertNotSame(first, widget);
+
+        ImagePipeline.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertNotSame(first, pipeline.getResource(ImagePipeline.CONSUMER_NOTIFICATION,
+                R.drawable.art_storm, 64));
+    }
+}
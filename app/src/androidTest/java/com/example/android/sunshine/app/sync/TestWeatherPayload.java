@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.nio.ByteBuffer;
+
+public class TestWeatherPayload extends AndroidTestCase {
+
+    public void testEncodesHeaderAndDays() {
+        byte[] payload = WeatherPayload.encode(2457388, false,
+                new int[]{800, 501},
+                new double[]{21.46, -3.04},
+                new double[]{12.0, -10.56});
+        assertEquals("Error: Unexpected payload size",
+                WeatherPayload.HEADER_SIZE + 2 * WeatherPayload.DAY_RECORD_SIZE, payload.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        assertEquals(WeatherPayload.VERSION, buffer.get(WeatherPayload.HEADER_VERSION));
+        assertEquals(0, buffer.get(WeatherPayload.HEADER_FLAGS) & WeatherPayload.FLAG_METRIC);
+        assertEquals(2, buffer.get(WeatherPayload.HEADER_DAY_COUNT));
+        assertEquals(WeatherPayload.DAY_RECORD_SIZE, buffer.get(WeatherPayload.HEADER_RECORD_SIZE));
+        assertEquals(2457388, buffer.getInt(WeatherPayload.HEADER_FIRST_JULIAN_DAY));
+
+        int first = WeatherPayload.HEADER_SIZE;
+        int second = first + WeatherPayload.DAY_RECORD_SIZE;
+        assertEquals(800, buffer.getShort(first + WeatherPayload.DAY_WEATHER_ID));
+        assertEquals(215, buffer.getShort(first + WeatherPayload.DAY_MAX_TEMP));
+        assertEquals(120, buffer.getShort(first + WeatherPayload.DAY_MIN_TEMP));
+        assertEquals(501, buffer.getShort(second + WeatherPayload.DAY_WEATHER_ID));
+        assertEquals(-30, buffer.getShort(second + WeatherPayload.DAY_MAX_TEMP));
+        assertEquals(-106, buffer.getShort(second + WeatherPayload.DAY_MIN_TEMP));
+    }
+
+    public void testSendsAtMostAWeek() {
+        int days = WeatherPayload.MAX_DAYS + 3;
+        byte[] payload = WeatherPayload.encode(2457388, true,
+                new int[days], new double[days], new double[days]);
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        assertEquals(WeatherPayload.MAX_DAYS, buffer.get(WeatherPayload.HEADER_DAY_COUNT));
+        assertEquals(WeatherPayload.FLAG_METRIC,
+                buffer.get(WeatherPayload.HEADER_FLAGS) & WeatherPayload.FLAG_METRIC);
+        assertEquals(WeatherPayload.HEADER_SIZE
+                + WeatherPayload.MAX_DAYS * WeatherPayload.DAY_RECORD_SIZE, payload.length);
+    }
+}
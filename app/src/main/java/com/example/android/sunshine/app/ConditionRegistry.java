@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+/**
+ * Lookup tables for everything Sunshine shows for an OpenWeatherMap condition id: icons, art,
+ * art pack URLs, descriptions and Muzei images.  The tables are indexed directly by condition id,
+ * so lookups don't walk range checks or format strings.
+ *
+ * The resource and Muzei tables never change.  The art URLs and descriptions depend on the art
+ * pack and the locale, so {@link #get(Context)} builds a new registry when either changes.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public class ConditionRegistry {
+
+    // Condition ids are three digits, anything outside the table is unknown.
+    private static final int MAX_CONDITION_ID = 999;
+
+    // Every known condition belongs to one of these kinds, which decide its graphics.
+    private static final byte KIND_NONE = -1;
+    private static final byte KIND_STORM = 0;
+    private static final byte KIND_LIGHT_RAIN = 1;
+    private static final byte KIND_RAIN = 2;
+    private static final byte KIND_SNOW = 3;
+    private static final byte KIND_FOG = 4;
+    // Draws like a storm, but Muzei shows a dust storm for it
+    private static final byte KIND_SQUALLS = 5;
+    private static final byte KIND_CLEAR = 6;
+    private static final byte KIND_LIGHT_CLOUDS = 7;
+    private static final byte KIND_CLOUDS = 8;
+
+    private static final int[] KIND_ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_storm,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+
+    private static final int[] KIND_ART = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_storm,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+
+    // Names of the art in the remote art packs
+    private static final String[] KIND_ART_NAMES = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "storm",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    private static final String[] KIND_IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    private static final byte[] sKinds = new byte[MAX_CONDITION_ID + 1];
+    private static final int[] sDescriptionIds = new int[MAX_CONDITION_ID + 1];
+
+    static {
+        Arrays.fill(sKinds, KIND_NONE);
+        setKind(200, 232, KIND_STORM);
+        setKind(300, 321, KIND_LIGHT_RAIN);
+        setKind(500, 504, KIND_RAIN);
+        setKind(511, 511, KIND_SNOW);
+        setKind(520, 531, KIND_RAIN);
+        setKind(600, 622, KIND_SNOW);
+        // 761 falls in the fog range, so only 781 is drawn as a storm.
+        setKind(701, 761, KIND_FOG);
+        setKind(781, 781, KIND_SQUALLS);
+        setKind(800, 800, KIND_CLEAR);
+        setKind(801, 801, KIND_LIGHT_CLOUDS);
+        setKind(802, 804, KIND_CLOUDS);
+
+        for (int id = 200; id <= 232; id++) {
+            sDescriptionIds[id] = R.string.condition_2xx;
+        }
+        for (int id = 300; id <= 321; id++) {
+            sDescriptionIds[id] = R.string.condition_3xx;
+        }
+        sDescriptionIds[500] = R.string.condition_500;
+        sDescriptionIds[501] = R.string.condition_501;
+        sDescriptionIds[502] = R.string.condition_502;
+        sDescriptionIds[503] = R.string.condition_503;
+        sDescriptionIds[504] = R.string.condition_504;
+        sDescriptionIds[511] = R.string.condition_511;
+        sDescriptionIds[520] = R.string.condition_520;
+        sDescriptionIds[531] = R.string.condition_531;
+        sDescriptionIds[600] = R.string.condition_600;
+        sDescriptionIds[601] = R.string.condition_601;
+        sDescriptionIds[602] = R.string.condition_602;
+        sDescriptionIds[611] = R.string.condition_611;
+        sDescriptionIds[612] = R.string.condition_612;
+        sDescriptionIds[615] = R.string.condition_615;
+        sDescriptionIds[616] = R.string.condition_616;
+        sDescriptionIds[620] = R.string.condition_620;
+        sDescriptionIds[621] = R.string.condition_621;
+        sDescriptionIds[622] = R.string.condition_622;
+        sDescriptionIds[701] = R.string.condition_701;
+        sDescriptionIds[711] = R.string.condition_711;
+        sDescriptionIds[721] = R.string.condition_721;
+        sDescriptionIds[731] = R.string.condition_731;
+        sDescriptionIds[741] = R.string.condition_741;
+        sDescriptionIds[751] = R.string.condition_751;
+        sDescriptionIds[761] = R.string.condition_761;
+        sDescriptionIds[762] = R.string.condition_762;
+        sDescriptionIds[771] = R.string.condition_771;
+        sDescriptionIds[781] = R.string.condition_781;
+        sDescriptionIds[800] = R.string.condition_800;
+        sDescriptionIds[801] = R.string.condition_801;
+        sDescriptionIds[802] = R.string.condition_802;
+        sDescriptionIds[803] = R.string.condition_803;
+        sDescriptionIds[804] = R.string.condition_804;
+        sDescriptionIds[900] = R.string.condition_900;
+        sDescriptionIds[901] = R.string.condition_901;
+        sDescriptionIds[902] = R.string.condition_902;
+        sDescriptionIds[903] = R.string.condition_903;
+        sDescriptionIds[904] = R.string.condition_904;
+        sDescriptionIds[905] = R.string.condition_905;
+        sDescriptionIds[906] = R.string.condition_906;
+        sDescriptionIds[951] = R.string.condition_951;
+        sDescriptionIds[952] = R.string.condition_952;
+        sDescriptionIds[953] = R.string.condition_953;
+        sDescriptionIds[954] = R.string.condition_954;
+        sDescriptionIds[955] = R.string.condition_955;
+        sDescriptionIds[956] = R.string.condition_956;
+        sDescriptionIds[957] = R.string.condition_957;
+        sDescriptionIds[958] = R.string.condition_958;
+        sDescriptionIds[959] = R.string.condition_959;
+        sDescriptionIds[960] = R.string.condition_960;
+        sDescriptionIds[961] = R.string.condition_961;
+        sDescriptionIds[962] = R.string.condition_962;
+    }
+
+    private static void setKind(int firstId, int lastId, byte kind) {
+        for (int id = firstId; id <= lastId; id++) {
+            sKinds[id] = kind;
+        }
+    }
+
+    private static byte kindOf(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_CONDITION_ID) {
+            return KIND_NONE;
+        }
+        return sKinds[weatherId];
+    }
+
+    private static volatile ConditionRegistry sInstance;
+
+    private final Context mAppContext;
+    private final String mArtPack;
+    private final Locale mLocale;
+    private final String[] mArtUrls;
+    // Filled in as conditions are first asked for, most are never seen
+    private final String[] mDescriptions = new String[MAX_CONDITION_ID + 1];
+
+    private ConditionRegistry(Context appContext, String artPack, Locale locale) {
+        mAppContext = appContext;
+        mArtPack = artPack;
+        mLocale = locale;
+        mArtUrls = new String[KIND_ART_NAMES.length];
+        for (int kind = 0; kind < KIND_ART_NAMES.length; kind++) {
+            mArtUrls[kind] = String.format(Locale.US, artPack, KIND_ART_NAMES[kind]);
+        }
+    }
+
+    /**
+     * @return the registry for the current art pack and locale.
+     */
+    public static ConditionRegistry get(Context context) {
+        String artPack = SettingsSnapshot.get(context).artPack;
+        Locale locale = context.getResources().getConfiguration().locale;
+
+        ConditionRegistry registry = sInstance;
+        if (registry == null || !registry.mArtPack.equals(artPack)
+                || !registry.mLocale.equals(locale)) {
+            registry = new ConditionRegistry(context.getApplicationContext(), artPack, locale);
+            sInstance = registry;
+        }
+        return registry;
+    }
+
+    /**
+     * @return resource id for the corresponding icon. -1 if no relation is found.
+     */
+    public static int getIconResource(int weatherId) {
+        byte kind = kindOf(weatherId);
+        return kind == KIND_NONE ? -1 : KIND_ICONS[kind];
+    }
+
+    /**
+     * @return resource id for the corresponding art. -1 if no relation is found.
+     */
+    public static int getArtResource(int weatherId) {
+        byte kind = kindOf(weatherId);
+        return kind == KIND_NONE ? -1 : KIND_ART[kind];
+    }
+
+    /**
+     * @return A string URL to an appropriate image or null if no mapping is found
+     */
+    public static String getImageUrl(int weatherId) {
+        byte kind = kindOf(weatherId);
+        return kind == KIND_NONE ? null : KIND_IMAGE_URLS[kind];
+    }
+
+    /**
+     * @return the url of every distinct image in an art pack.
+     */
+    public static String[] getArtUrls(String artPack) {
+        LinkedHashSet<String> artUrls = new LinkedHashSet<String>();
+        for (String name : KIND_ART_NAMES) {
+            artUrls.add(String.format(Locale.US, artPack, name));
+        }
+        return artUrls.toArray(new String[artUrls.size()]);
+    }
+
+    /**
+     * @return url for the corresponding art in this registry's art pack. null if no relation is
+     * found.
+     */
+    public String getArtUrl(int weatherId) {
+        byte kind = kindOf(weatherId);
+        return kind == KIND_NONE ? null : mArtUrls[kind];
+    }
+
+    /**
+     * @return the localized description of the condition.
+     */
+    public String getDescription(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_CONDITION_ID) {
+            return mAppContext.getString(R.string.condition_unknown, weatherId);
+        }
+        String description = mDescriptions[weatherId];
+        if (description == null) {
+            int stringId = sDescriptionIds[weatherId];
+            description = stringId == 0
+                    ? mAppContext.getString(R.string.condition_unknown, weatherId)
+                    : mAppContext.getString(stringId);
+            mDescriptions[weatherId] = description;
+        }
+        return description;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.JulianDays;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Date arithmetic and formatting for forecast dates.
+ *
+ * Dates are stored as the local midnight starting their day, worked out by {@link JulianDays}.
+ * The day names and month/day strings shown for each day are formatted once and then remembered.
+ * Everything cached is dropped when the day rolls over, or when the time zone or locale changes.
+ */
+public class DateEngine {
+
+    // Don't hang on to strings for every date someone ever looked at.
+    private static final int MAX_CACHED_DAYS = 64;
+
+    private static volatile DateEngine sInstance;
+
+    private static class DayStrings {
+        String dayName;
+        String monthDay;
+        String shortDate;
+        String friendlyLongToday;
+        String fullFriendly;
+    }
+
+    private final Context mAppContext;
+    private final Locale mLocale;
+    private final TimeZone mTimeZone;
+    private final SparseArray<DayStrings> mDays = new SparseArray<DayStrings>();
+    private int mToday;
+    // Formatters are made when first needed, and only used while holding the engine's lock
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private SimpleDateFormat mShortDateFormat;
+
+    private DateEngine(Context appContext, Locale locale, TimeZone timeZone) {
+        mAppContext = appContext;
+        mLocale = locale;
+        mTimeZone = timeZone;
+        mToday = getJulianDay(System.currentTimeMillis());
+    }
+
+    /**
+     * Starts listening for time zone and locale changes, which invalidate the caches.  Called
+     * once from {@link SunshineApplication}.
+     */
+    static void registerInvalidationReceiver(Context context) {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+    }
+
+    /**
+     * Drops the cached time zone and all the cached strings.
+     */
+    public static void invalidate() {
+        JulianDays.invalidate();
+        sInstance = null;
+    }
+
+    /**
+     * @return the julian day that the given instant falls on, in the local time zone.
+     */
+    public static int getJulianDay(long millis) {
+        return JulianDays.getJulianDay(millis);
+    }
+
+    /**
+     * @return the local midnight that starts the given julian day.
+     */
+    public static long getStartOfJulianDay(int julianDay) {
+        return JulianDays.getStartOfJulianDay(julianDay);
+    }
+
+    /**
+     * Normalizes an instant to the local midnight that starts its day, the way dates are stored
+     * in the database.
+     */
+    public static long normalizeDate(long millis) {
+        return JulianDays.normalizeDate(millis);
+    }
+
+    /**
+     * @return the engine for the current locale.
+     */
+    public static DateEngine get(Context context) {
+        Locale locale = context.getResources().getConfiguration().locale;
+        DateEngine engine = sInstance;
+        TimeZone timeZone = JulianDays.getTimeZone();
+        if (engine == null || !engine.mLocale.equals(locale) || engine.mTimeZone != timeZone) {
+            engine = new DateEngine(context.getApplicationContext(), locale, timeZone);
+            sInstance = engine;
+        }
+        return engine;
+    }
+
+    private DayStrings getDay(int julianDay) {
+        int today = getJulianDay(System.currentTimeMillis());
+        if (today != mToday) {
+            // "Today" and "Tomorrow" have moved on, so everything cached is stale.
+            mDays.clear();
+            mToday = today;
+        }
+        DayStrings day = mDays.get(julianDay);
+        if (day == null) {
+            if (mDays.size() >= MAX_CACHED_DAYS) {
+                mDays.clear();
+            }
+            day = new DayStrings();
+            mDays.put(julianDay, day);
+        }
+        return day;
+    }
+
+    private SimpleDateFormat createFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mTimeZone);
+        return format;
+    }
+
+    /**
+     * Given a day, returns just the name to use for that day.
+     * E.g "today", "tomorrow", "wednesday".
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        int julianDay = getJulianDay(dateInMillis);
+        DayStrings day = getDay(julianDay);
+        if (day.dayName == null) {
+            if (julianDay == mToday) {
+                day.dayName = mAppContext.getString(R.string.today);
+            } else if (julianDay == mToday + 1) {
+                day.dayName = mAppContext.getString(R.string.tomorrow);
+            } else {
+                // Otherwise, the format is just the day of the week (e.g "Wednesday").
+                if (mDayNameFormat == null) {
+                    mDayNameFormat = createFormat("EEEE");
+                }
+                day.dayName = mDayNameFormat.format(dateInMillis);
+            }
+        }
+        return day.dayName;
+    }
+
+    /**
+     * @return The day in the form of a string formatted "December 6"
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        DayStrings day = getDay(getJulianDay(dateInMillis));
+        if (day.monthDay == null) {
+            if (mMonthDayFormat == null) {
+                mMonthDayFormat = createFormat("MMMM dd");
+            }
+            day.monthDay = mMonthDayFormat.format(dateInMillis);
+        }
+        return day.monthDay;
+    }
+
+    /**
+     * @return the date as shown in the forecast list, see
+     * {@link Utility#getFriendlyDayString(Context, long, boolean)}.
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int julianDay = getJulianDay(dateInMillis);
+        DayStrings day = getDay(julianDay);
+        if (displayLongToday && julianDay == mToday) {
+            // "Today, June 24"
+            if (day.friendlyLongToday == null) {
+                day.friendlyLongToday = mAppContext.getString(R.string.format_full_friendly_date,
+                        mAppContext.getString(R.string.today), getFormattedMonthDay(dateInMillis));
+            }
+            return day.friendlyLongToday;
+        } else if (julianDay < mToday + 7) {
+            // If the input date is less than a week in the future, just return the day name.
+            return getDayName(dateInMillis);
+        } else {
+            // Otherwise, use the form "Mon Jun 3"
+            if (day.shortDate == null) {
+                if (mShortDateFormat == null) {
+                    mShortDateFormat = createFormat("EEE MMM dd");
+                }
+                day.shortDate = mShortDateFormat.format(dateInMillis);
+            }
+            return day.shortDate;
+        }
+    }
+
+    /**
+     * @return the date as shown in the detail view, e.g. "Wednesday, June 24".
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        DayStrings day = getDay(getJulianDay(dateInMillis));
+        if (day.fullFriendly == null) {
+            day.fullFriendly = mAppContext.getString(R.string.format_full_friendly_date,
+                    getDayName(dateInMillis), getFormattedMonthDay(dateInMillis));
+        }
+        return day.fullFriendly;
+    }
+}
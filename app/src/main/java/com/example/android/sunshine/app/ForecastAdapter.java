@@ -16,9 +16,10 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -29,14 +30,18 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.image.ArtLoader;
+import com.example.android.sunshine.app.image.ArtPreloader;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from {@link ForecastRows} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ArtPreloader.PreloadProvider {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -44,11 +49,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    // Diffs are small but involve string comparisons, so they're worked out off the UI thread.
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private ForecastRows mRows;
+    // The latest rows handed to swapRows that are still waiting on their diff
+    private ForecastRows mPendingRows;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    // Sizes the icons are shown at, so art can be loaded before there's a view for it
+    final private int mTodayIconSize;
+    final private int mListIconSize;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +87,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                // Tapped while being removed, or before the next layout placed it
+                return;
+            }
+            mClickHandler.onClick(mRows.get(adapterPosition).date, this);
             mICM.onClick(this);
         }
     }
@@ -88,8 +104,26 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by their date, which lets the selection follow a row when the
+        // list changes around it.  Set before anything observes the adapter, which can't change
+        // it after.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mTodayIconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mListIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mICM.onAttachedToRecyclerView();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        mICM.onDetachedFromRecyclerView();
+        super.onDetachedFromRecyclerView(recyclerView);
     }
 
     /*
@@ -124,63 +158,47 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Everything was formatted when the rows were built, so binding only assigns fields.
+        ForecastRows.Row row = mRows.get(position);
         int defaultImage;
-        boolean useLongToday;
+        int iconSize;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = row.artResource;
+                iconSize = mTodayIconSize;
+                dateText = row.longDateText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = row.iconResource;
+                iconSize = mListIconSize;
+                dateText = row.dateText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == row.artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
-                    .into(forecastAdapterViewHolder.mIconView);
+            ArtLoader.get(mContext).load(forecastAdapterViewHolder.mIconView, row.artUrl,
+                    iconSize, defaultImage);
         }
 
-        // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.transitionName);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -206,20 +224,75 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public void preload(int position) {
+        if ( null == mRows || position >= mRows.size() ) {
+            return;
+        }
+        ForecastRows.Row row = mRows.get(position);
+        if ( null != row.artUrl ) {
+            int iconSize = getItemViewType(position) == VIEW_TYPE_TODAY
+                    ? mTodayIconSize : mListIconSize;
+            ArtLoader.get(mContext).preload(row.artUrl, iconSize);
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if ( null == mRows || position < 0 || position >= mRows.size() ) {
+            return RecyclerView.NO_ID;
+        }
+        return mRows.get(position).date;
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mRows ) return 0;
+        return mRows.size();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
-        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    /**
+     * Switches to new rows.  If both the old and the new list have rows, only the rows that were
+     * added, removed, moved or changed are updated, once the difference has been worked out in
+     * the background.  Otherwise the switch happens right away.
+     */
+    public void swapRows(final ForecastRows newRows) {
+        final ForecastRows oldRows = mRows;
+        if ( null == oldRows || null == newRows || oldRows.size() == 0 || newRows.size() == 0 ) {
+            mPendingRows = null;
+            mRows = newRows;
+            notifyDataSetChanged();
+            mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+            return;
+        }
+
+        mPendingRows = newRows;
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ForecastRowsDiff diff = ForecastRowsDiff.calculate(oldRows, newRows);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Drop the result if the rows were swapped again in the meantime.
+                        if ( mPendingRows != newRows || mRows != oldRows ) {
+                            return;
+                        }
+                        mPendingRows = null;
+                        mRows = newRows;
+                        diff.dispatchTo(ForecastAdapter.this);
+                        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+                    }
+                });
+            }
+        });
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    /**
+     * @return the latest rows passed to {@link #swapRows}, even if they're still being diffed.
+     */
+    public ForecastRows getRows() {
+        return null != mPendingRows ? mPendingRows : mRows;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
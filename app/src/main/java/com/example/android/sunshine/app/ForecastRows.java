@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * An immutable, display-ready copy of the forecast list.  All the formatting the
+ * {@link ForecastAdapter} needs (dates, temperatures, descriptions, icons) is done once, off the
+ * UI thread, by {@link Builder}, so binding a row only assigns fields.
+ */
+public class ForecastRows {
+
+    /**
+     * One day of the forecast, with everything already formatted for display.
+     */
+    public static final class Row {
+        // The normalized date doubles as a stable id for the row.
+        public final long date;
+        public final int weatherId;
+        public final double high;
+        public final double low;
+
+        // "Today, June 24" for the today layout, "Today" / "Wednesday" / "Mon Jun 8" otherwise
+        public final String longDateText;
+        public final String dateText;
+        public final String description;
+        public final String descriptionA11y;
+        public final String highText;
+        public final String highA11y;
+        public final String lowText;
+        public final String lowA11y;
+        // Large art for the today layout, small icon for everything else
+        public final int artResource;
+        public final int iconResource;
+        // null when the local art pack is in use
+        public final String artUrl;
+        public final String transitionName;
+
+        Row(Context context, long date, int weatherId, double high, double low,
+            boolean isMetric, boolean usingLocalGraphics) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.high = high;
+            this.low = low;
+
+            longDateText = Utility.getFriendlyDayString(context, date, true);
+            dateText = Utility.getFriendlyDayString(context, date, false);
+            description = Utility.getStringForWeatherCondition(context, weatherId);
+            descriptionA11y = context.getString(R.string.a11y_forecast, description);
+            highText = Utility.formatTemperature(context, high, isMetric);
+            highA11y = context.getString(R.string.a11y_high_temp, highText);
+            lowText = Utility.formatTemperature(context, low, isMetric);
+            lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+            artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+            iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+            artUrl = usingLocalGraphics
+                    ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+            // this enables better animations. even if we lose state due to a device rotation,
+            // the animator can use this to re-find the original view.  It's keyed on the date
+            // so that it stays correct when rows move without being rebound.
+            transitionName = "iconView" + date;
+        }
+    }
+
+    public final String locationSetting;
+    public final double coordLat;
+    public final double coordLong;
+    private final Row[] mRows;
+    // What the rows were formatted with
+    private final SettingsSnapshot mSettings;
+    private final Locale mLocale;
+    // "Today", "Tomorrow" and the day names depend on the day the rows were formatted on
+    private final int mJulianDay;
+
+    private ForecastRows(String locationSetting, double coordLat, double coordLong, Row[] rows,
+                         SettingsSnapshot settings, Locale locale, int julianDay) {
+        this.locationSetting = locationSetting;
+        this.coordLat = coordLat;
+        this.coordLong = coordLong;
+        mRows = rows;
+        mSettings = settings;
+        mLocale = locale;
+        mJulianDay = julianDay;
+    }
+
+    /**
+     * @return true if the rows are formatted for the current units, art pack, locale and day.
+     */
+    public boolean isPresentationCurrent(Context context) {
+        return mSettings.hasSamePresentation(SettingsSnapshot.get(context))
+                && mLocale.equals(context.getResources().getConfiguration().locale)
+                && mJulianDay == DateEngine.getJulianDay(System.currentTimeMillis());
+    }
+
+    /**
+     * Formats the same forecast again for the current units, art pack, locale and day.  Only the
+     * stored raw values are used, so the database isn't touched.
+     */
+    public ForecastRows reformat(Context context) {
+        Builder builder = new Builder(context, locationSetting)
+                .setCoordinates(coordLat, coordLong);
+        for (Row row : mRows) {
+            builder.addDay(row.date, row.weatherId, row.high, row.low);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return mRows.length;
+    }
+
+    public Row get(int position) {
+        return mRows[position];
+    }
+
+    /**
+     * @return the position of the row for the given normalized date, or -1 if there isn't one.
+     */
+    public int findPosition(long date) {
+        for (int i = 0; i < mRows.length; i++) {
+            if (mRows[i].date == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Formats forecast days into {@link Row}s.  Preferences are read once per builder rather than
+     * once per row.  This does enough string formatting that it should be kept off the UI thread
+     * for anything bigger than a cached snapshot.
+     */
+    public static class Builder {
+        private final Context mContext;
+        private final String mLocationSetting;
+        private final SettingsSnapshot mSettings;
+        private final Locale mLocale;
+        private final int mJulianDay;
+        private final ArrayList<Row> mRows = new ArrayList<Row>();
+        private double mCoordLat;
+        private double mCoordLong;
+
+        public Builder(Context context, String locationSetting) {
+            mContext = context;
+            mLocationSetting = locationSetting;
+            mSettings = SettingsSnapshot.get(context);
+            mLocale = context.getResources().getConfiguration().locale;
+            mJulianDay = DateEngine.getJulianDay(System.currentTimeMillis());
+        }
+
+        public Builder setCoordinates(double coordLat, double coordLong) {
+            mCoordLat = coordLat;
+            mCoordLong = coordLong;
+            return this;
+        }
+
+        public Builder addDay(long date, int weatherId, double high, double low) {
+            mRows.add(new Row(mContext, date, weatherId, high, low,
+                    mSettings.isMetric, mSettings.usingLocalGraphics));
+            return this;
+        }
+
+        public ForecastRows build() {
+            return new ForecastRows(mLocationSetting, mCoordLat, mCoordLong,
+                    mRows.toArray(new Row[mRows.size()]), mSettings, mLocale, mJulianDay);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The list of fine-grained adapter notifications that turns one {@link ForecastRows} into another.
+ * Rows are matched by their date, which is the adapter's stable id.  Calculating the diff doesn't
+ * touch any views, so it can be done on a background thread; {@link #dispatchTo} must then be
+ * called on the UI thread right after the adapter switches to the new rows.
+ */
+class ForecastRowsDiff {
+
+    /**
+     * Decides whether a row that is in both lists needs to be rebound.
+     */
+    interface ContentComparator {
+        boolean areContentsTheSame(int oldPosition, int newPosition);
+    }
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_MOVE = 1;
+    private static final int OP_INSERT = 2;
+    private static final int OP_CHANGE = 3;
+
+    // Each operation is stored as three ints: type, position and count (or the target of a move),
+    // in the order they have to be dispatched.
+    private final int[] mOps;
+    private final int mOpCount;
+
+    private ForecastRowsDiff(int[] ops, int opCount) {
+        mOps = ops;
+        mOpCount = opCount;
+    }
+
+    static ForecastRowsDiff calculate(final ForecastRows oldRows, final ForecastRows newRows) {
+        long[] oldIds = new long[oldRows.size()];
+        for (int i = 0; i < oldIds.length; i++) {
+            oldIds[i] = oldRows.get(i).date;
+        }
+        long[] newIds = new long[newRows.size()];
+        for (int i = 0; i < newIds.length; i++) {
+            newIds[i] = newRows.get(i).date;
+        }
+        return calculate(oldIds, newIds, new ContentComparator() {
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                ForecastRows.Row oldRow = oldRows.get(oldPosition);
+                ForecastRows.Row newRow = newRows.get(newPosition);
+                return oldRow.weatherId == newRow.weatherId
+                        && oldRow.artResource == newRow.artResource
+                        && TextUtils.equals(oldRow.longDateText, newRow.longDateText)
+                        && TextUtils.equals(oldRow.dateText, newRow.dateText)
+                        && TextUtils.equals(oldRow.description, newRow.description)
+                        && TextUtils.equals(oldRow.highText, newRow.highText)
+                        && TextUtils.equals(oldRow.lowText, newRow.lowText)
+                        && TextUtils.equals(oldRow.artUrl, newRow.artUrl);
+            }
+        });
+    }
+
+    /**
+     * @param oldIds     the ids of the rows currently shown, which must be unique
+     * @param newIds     the ids of the rows to show, which must be unique
+     * @param comparator checks rows whose id is in both lists for changes
+     */
+    static ForecastRowsDiff calculate(long[] oldIds, long[] newIds, ContentComparator comparator) {
+        HashMap<Long, Integer> newPositions = new HashMap<Long, Integer>(newIds.length * 2);
+        for (int i = 0; i < newIds.length; i++) {
+            newPositions.put(newIds[i], i);
+        }
+        // For each old row, where it ends up, or -1 if it's removed.
+        int[] oldToNew = new int[oldIds.length];
+        boolean[] newIsKept = new boolean[newIds.length];
+        int keptCount = 0;
+        for (int i = 0; i < oldIds.length; i++) {
+            Integer newPosition = newPositions.get(oldIds[i]);
+            if (newPosition == null) {
+                oldToNew[i] = -1;
+            } else {
+                oldToNew[i] = newPosition;
+                newIsKept[newPosition] = true;
+                keptCount++;
+            }
+        }
+
+        Builder ops = new Builder();
+
+        // Removals, back to front so that the positions still to come stay valid.
+        int i = oldIds.length - 1;
+        while (i >= 0) {
+            if (oldToNew[i] != -1) {
+                i--;
+                continue;
+            }
+            int end = i;
+            while (i >= 0 && oldToNew[i] == -1) {
+                i--;
+            }
+            ops.add(OP_REMOVE, i + 1, end - i);
+        }
+
+        // What's left is the kept rows in their old order, identified by their new positions.
+        ArrayList<Integer> current = new ArrayList<Integer>(keptCount);
+        for (int position : oldToNew) {
+            if (position != -1) {
+                current.add(position);
+            }
+        }
+
+        // Rows on the longest run that's already in the right relative order stay put, every
+        // other row is moved to just after the row that precedes it in the new list.
+        boolean[] stays = longestIncreasingSubsequence(current);
+        int[] keptByNewOrder = new int[keptCount];
+        int k = 0;
+        for (int position = 0; position < newIds.length; position++) {
+            if (newIsKept[position]) {
+                keptByNewOrder[k++] = position;
+            }
+        }
+        boolean[] newStays = new boolean[newIds.length];
+        for (int j = 0; j < current.size(); j++) {
+            if (stays[j]) {
+                newStays[current.get(j)] = true;
+            }
+        }
+        for (int j = 0; j < keptCount; j++) {
+            int newPosition = keptByNewOrder[j];
+            if (newStays[newPosition]) {
+                continue;
+            }
+            int from = current.indexOf(newPosition);
+            int to = j == 0 ? 0 : current.indexOf(keptByNewOrder[j - 1]) + 1;
+            if (from < to) {
+                to--;
+            }
+            if (from != to) {
+                current.add(to, current.remove(from));
+                ops.add(OP_MOVE, from, to);
+            }
+        }
+
+        // Insertions, front to back, land the kept rows on their final positions.
+        i = 0;
+        while (i < newIds.length) {
+            if (newIsKept[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < newIds.length && !newIsKept[i]) {
+                i++;
+            }
+            ops.add(OP_INSERT, start, i - start);
+        }
+
+        // Finally, rebind kept rows whose contents changed.  The first row has a layout of its
+        // own, so a row moving onto or off it has to be rebound too.
+        int[] newToOld = new int[newIds.length];
+        Arrays.fill(newToOld, -1);
+        for (int j = 0; j < oldToNew.length; j++) {
+            if (oldToNew[j] != -1) {
+                newToOld[oldToNew[j]] = j;
+            }
+        }
+        i = 0;
+        while (i < newIds.length) {
+            if (!isChanged(newToOld, i, comparator)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < newIds.length && isChanged(newToOld, i, comparator)) {
+                i++;
+            }
+            ops.add(OP_CHANGE, start, i - start);
+        }
+
+        return new ForecastRowsDiff(ops.mOps, ops.mCount);
+    }
+
+    private static boolean isChanged(int[] newToOld, int newPosition, ContentComparator comparator) {
+        int oldPosition = newToOld[newPosition];
+        if (oldPosition == -1) {
+            return false;
+        }
+        if ((oldPosition == 0) != (newPosition == 0)) {
+            return true;
+        }
+        return !comparator.areContentsTheSame(oldPosition, newPosition);
+    }
+
+    /**
+     * Marks one longest strictly increasing subsequence of the given values.
+     */
+    private static boolean[] longestIncreasingSubsequence(ArrayList<Integer> values) {
+        int n = values.size();
+        // tails[len] is the index of the smallest tail of an increasing run of length len + 1
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int value = values.get(i);
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values.get(tails[mid]) < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            previous[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+        boolean[] inSequence = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            inSequence[i] = true;
+        }
+        return inSequence;
+    }
+
+    boolean isEmpty() {
+        return mOpCount == 0;
+    }
+
+    /**
+     * Sends the notifications to the adapter, which must already be returning the new rows.
+     */
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int op = 0; op < mOpCount; op++) {
+            int position = mOps[op * 3 + 1];
+            int argument = mOps[op * 3 + 2];
+            switch (mOps[op * 3]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, argument);
+                    break;
+                case OP_MOVE:
+                    adapter.notifyItemMoved(position, argument);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, argument);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemRangeChanged(position, argument);
+                    break;
+            }
+        }
+    }
+
+    private static class Builder {
+        int[] mOps = new int[3 * 8];
+        int mCount;
+
+        void add(int type, int position, int argument) {
+            if ((mCount + 1) * 3 > mOps.length) {
+                mOps = Arrays.copyOf(mOps, mOps.length * 2);
+            }
+            mOps[mCount * 3] = type;
+            mOps[mCount * 3 + 1] = position;
+            mOps[mCount * 3 + 2] = argument;
+            mCount++;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherCursor;
+
+/**
+ * Queries the forecast for a location and turns it into display-ready {@link ForecastRows} on
+ * the loader's background thread.  Like a CursorLoader, it reloads whenever the weather data
+ * changes.
+ */
+public class ForecastRowsLoader extends AsyncTaskLoader<ForecastRows> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final String mLocationSetting;
+    private ForecastRows mRows;
+    private boolean mObserverRegistered;
+
+    public ForecastRowsLoader(Context context, String locationSetting) {
+        super(context);
+        mLocationSetting = locationSetting;
+    }
+
+    @Override
+    public ForecastRows loadInBackground() {
+        // To only show current and future dates, filter the query to return weather only for
+        // dates after or including today.
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                mLocationSetting, System.currentTimeMillis());
+
+        // Sort order:  Ascending, by date.
+        WeatherCursor cursor = WeatherCursor.query(getContext().getContentResolver(),
+                weatherForLocationUri,
+                WeatherCursor.FORECAST_PROJECTION,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        ForecastRows.Builder builder = new ForecastRows.Builder(getContext(), mLocationSetting);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    builder.setCoordinates(cursor.getCoordLat(), cursor.getCoordLong());
+                    do {
+                        builder.addDay(cursor.getDate(),
+                                cursor.getWeatherId(),
+                                cursor.getMaxTemp(),
+                                cursor.getMinTemp());
+                    } while (cursor.moveToNext());
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void deliverResult(ForecastRows rows) {
+        if (isReset()) {
+            return;
+        }
+        mRows = rows;
+        if (isStarted()) {
+            super.deliverResult(rows);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            // Any change to the weather table, e.g. a finished sync, reloads the rows.
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mRows != null) {
+            deliverResult(mRows);
+        }
+        if (takeContentChanged() || mRows == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mRows = null;
+    }
+}
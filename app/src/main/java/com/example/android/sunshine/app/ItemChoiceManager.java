@@ -28,8 +28,8 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  When the
+ * adapter has stable ids, selections follow their ids as rows are inserted, removed or moved.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -37,6 +37,7 @@ public class ItemChoiceManager {
     private int mChoiceMode;
 
     private RecyclerView.Adapter mAdapter;
+    private boolean mObserving;
     private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
         @Override
         public void onChanged() {
@@ -44,6 +45,22 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Fine-grained notifications shift positions too, so follow the checked ids through them.
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -55,6 +72,28 @@ public class ItemChoiceManager {
         mAdapter = adapter;
     }
 
+    /**
+     * Starts following the adapter's changes.  Call when the adapter is attached to a
+     * RecyclerView, after it has settled whether it has stable ids.
+     */
+    public void onAttachedToRecyclerView() {
+        if (!mObserving) {
+            mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
+            mObserving = true;
+        }
+    }
+
+    /**
+     * Stops following the adapter's changes, so a dropped adapter doesn't keep the manager
+     * registered.
+     */
+    public void onDetachedFromRecyclerView() {
+        if (mObserving) {
+            mAdapter.unregisterAdapterDataObserver(mAdapterDataObserver);
+            mObserving = false;
+        }
+    }
+
     /**
      * How many positions in either direction we will search to try to
      * find a checked item with a stable ID that moved position across
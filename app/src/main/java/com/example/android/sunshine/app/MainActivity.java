@@ -89,7 +89,9 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
+        // Account creation and sync scheduling happen on a background thread.
         SunshineSyncAdapter.initializeSyncAdapter(this);
+        StartupTiming.mark("Sync bootstrap scheduled");
 
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
@@ -107,6 +109,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                 startService(intent);
             }
         }
+        StartupTiming.mark("MainActivity.onCreate finished");
     }
 
     @Override
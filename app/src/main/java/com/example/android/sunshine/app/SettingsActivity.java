@@ -25,8 +25,9 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.image.ArtPackPrefetchService;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.WearableUpdateService;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
@@ -131,24 +132,41 @@ public class SettingsActivity extends PreferenceActivity
     // start our synchronization here
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // Listeners run in no particular order, so make sure the syncs and reloads started
+        // below see the new settings.
+        SettingsSnapshot.reload(this);
         if ( key.equals(getString(R.string.pref_location_key)) ) {
             // we've changed the location
             // first clear locationStatus
             Utility.resetLocationStatus(this);
             SunshineSyncAdapter.syncImmediately(this);
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
-            // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // units have changed. Nothing stored changed, so just redraw with the new units
+            refreshPresentation();
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // art pack have changed. update lists of weather entries accordingly, and fetch the
+            // new pack for offline use once we're on an unmetered network
+            refreshPresentation();
+            ArtPackPrefetchService.schedule(this);
         }
     }
 
+    /*
+        Units and art pack only change how the weather is shown.  The forecast and detail screens
+        format their cached values again when they resume, and the widgets and the watch are
+        redrawn from the forecast snapshot, so neither the database nor the network is involved.
+     */
+    private void refreshPresentation() {
+        Intent dataUpdatedIntent = new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                .setPackage(getPackageName());
+        sendBroadcast(dataUpdatedIntent);
+        startService(new Intent(this, WearableUpdateService.class));
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
     public Intent getParentActivityIntent() {
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * An immutable copy of the settings that are read while binding rows, building widgets and
+ * syncing.  The current copy is replaced whenever the preferences change, so reading a setting
+ * is a field load instead of a preferences lookup.
+ *
+ * The snapshot is published through a volatile field, so the sync thread and the widget services
+ * always see a complete copy, though a change made off the UI thread may only show up once the
+ * preferences have notified their listeners on the UI thread.  Code that has to see its own
+ * change right away can call {@link #reload(Context)}.
+ */
+public class SettingsSnapshot {
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only keeps weak references to its listeners, so hold on to ours.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    public final String locationSetting;
+    public final boolean isMetric;
+    // The URL format of the art pack in use
+    public final String artPack;
+    public final boolean usingLocalGraphics;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        locationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        usingLocalGraphics = artPack.equals(sunshineArtPack);
+    }
+
+    /**
+     * @return true if the other snapshot would display weather the same way, i.e. with the same
+     * units and art pack.
+     */
+    public boolean hasSamePresentation(SettingsSnapshot other) {
+        return isMetric == other.isMetric && artPack.equals(other.artPack);
+    }
+
+    /**
+     * @return the current settings.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot current = sCurrent;
+        if (current == null) {
+            current = initialize(context);
+        }
+        return current;
+    }
+
+    private static synchronized SettingsSnapshot initialize(Context context) {
+        if (sCurrent == null) {
+            final Context appContext = context.getApplicationContext();
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    sCurrent = new SettingsSnapshot(appContext, sharedPreferences);
+                }
+            };
+            // Register before reading, so a change in between can't be missed.
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sCurrent = new SettingsSnapshot(appContext, prefs);
+        }
+        return sCurrent;
+    }
+
+    /**
+     * Rebuilds the snapshot straight away, rather than waiting for the change notification.
+     */
+    public static SettingsSnapshot reload(Context context) {
+        initialize(context);
+        Context appContext = context.getApplicationContext();
+        SettingsSnapshot current = new SettingsSnapshot(appContext,
+                PreferenceManager.getDefaultSharedPreferences(appContext));
+        sCurrent = current;
+        return current;
+    }
+}
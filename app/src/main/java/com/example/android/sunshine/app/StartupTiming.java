@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records how long a cold start takes, from the process being created to the first frame of the
+ * forecast list being drawn.  Filter logcat on the "SunshineStartup" tag to track regressions.
+ */
+public class StartupTiming {
+    public static final String LOG_TAG = "SunshineStartup";
+
+    private static long sProcessStart = -1;
+    private static boolean sFirstFrameReported;
+
+    private StartupTiming() {
+    }
+
+    /**
+     * Called as early as we get control of a new process, from {@link SunshineApplication}.
+     */
+    static void onProcessStart() {
+        sProcessStart = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Called on the UI thread when the forecast list has drawn its first rows.  Only the first
+     * call for each process is reported, later ones are ignored.
+     *
+     * @param source where the rows came from, e.g. "snapshot" or "database", or "empty" if the
+     *               frame had no rows
+     */
+    static void onFirstForecastFrame(String source) {
+        if (sFirstFrameReported || sProcessStart == -1) {
+            return;
+        }
+        sFirstFrameReported = true;
+        long elapsed = SystemClock.uptimeMillis() - sProcessStart;
+        Log.i(LOG_TAG, "Process start to first forecast frame: " + elapsed + "ms (" + source + ")");
+    }
+
+    /**
+     * Logs the time since process start for an intermediate startup milestone.
+     */
+    static void mark(String milestone) {
+        if (sFirstFrameReported || sProcessStart == -1) {
+            return;
+        }
+        long elapsed = SystemClock.uptimeMillis() - sProcessStart;
+        Log.d(LOG_TAG, milestone + ": " + elapsed + "ms");
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.app.Application;
+import android.os.Build;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.image.ArtCache;
+import com.example.android.sunshine.app.image.ImagePipeline;
+
+/**
+ * Application class for Sunshine.  Kept deliberately light, since everything done here delays
+ * every cold start, including the ones for widgets and the sync adapter.
+ */
+public class SunshineApplication extends Application {
+
+    public SunshineApplication() {
+        super();
+        StartupTiming.onProcessStart();
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        DateEngine.registerInvalidationReceiver(this);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ArtCache.trimMemory(level);
+        ImagePipeline.trimMemory(level);
+        Glide.get(this).trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        ArtCache.clearMemory();
+        ImagePipeline.clearMemory();
+        Glide.get(this).clearMemory();
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed-layout binary copy of the forecast database, written by the sync adapter after every
+ * successful commit and read through a memory-mapped buffer.  Widgets, Muzei and the forecast
+ * list can read a handful of numbers from here without a ContentResolver round-trip or opening
+ * SQLite.
+ *
+ * The file layout is:
+ * <pre>
+ *   header    (32 bytes)  magic, version, location count, day count, written-at, CRC32 of body
+ *   locations (96 bytes each)  id, lat, long, first day index, day count, location setting
+ *   days      (64 bytes each)  date, weather id, max, min, humidity, pressure, wind, degrees,
+ *                              short description
+ * </pre>
+ * Days are grouped per location and sorted by date, so each location owns a contiguous run of
+ * day records.
+ */
+public class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast.snapshot";
+
+    // "SUNS"
+    static final int MAGIC = 0x53554e53;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_LOCATION_COUNT = 8;
+    private static final int HEADER_DAY_COUNT = 12;
+    private static final int HEADER_WRITTEN_AT = 16;
+    private static final int HEADER_CHECKSUM = 24;
+
+    static final int LOCATION_RECORD_SIZE = 96;
+    private static final int LOCATION_ID = 0;
+    private static final int LOCATION_LAT = 8;
+    private static final int LOCATION_LONG = 16;
+    private static final int LOCATION_FIRST_DAY = 24;
+    private static final int LOCATION_DAY_COUNT = 28;
+    private static final int LOCATION_SETTING_LENGTH = 32;
+    private static final int LOCATION_SETTING = 34;
+    static final int MAX_SETTING_BYTES = LOCATION_RECORD_SIZE - LOCATION_SETTING;
+
+    static final int DAY_RECORD_SIZE = 64;
+    private static final int DAY_DATE = 0;
+    private static final int DAY_WEATHER_ID = 8;
+    private static final int DAY_MAX_TEMP = 12;
+    private static final int DAY_MIN_TEMP = 16;
+    private static final int DAY_HUMIDITY = 20;
+    private static final int DAY_PRESSURE = 24;
+    private static final int DAY_WIND_SPEED = 28;
+    private static final int DAY_DEGREES = 32;
+    private static final int DAY_DESC_LENGTH = 36;
+    private static final int DAY_DESC = 38;
+    static final int MAX_DESC_BYTES = DAY_RECORD_SIZE - DAY_DESC;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // The last mapping handed out, reused until the file is replaced.
+    private static final Object sLock = new Object();
+    private static ForecastSnapshot sCached;
+    private static long sCachedModified;
+    private static long sCachedLength;
+
+    private final ByteBuffer mBuffer;
+    private final int mLocationCount;
+    private final int mDayCount;
+    private final long mWrittenAt;
+
+    private ForecastSnapshot(ByteBuffer buffer) {
+        mBuffer = buffer;
+        mLocationCount = buffer.getInt(HEADER_LOCATION_COUNT);
+        mDayCount = buffer.getInt(HEADER_DAY_COUNT);
+        mWrittenAt = buffer.getLong(HEADER_WRITTEN_AT);
+    }
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Returns the current snapshot, mapping the file on first use and again whenever the sync
+     * adapter replaces it.
+     *
+     * @param context Context used to locate the snapshot file
+     * @return the snapshot, or null if there is no valid snapshot on disk yet
+     */
+    public static ForecastSnapshot open(Context context) {
+        File file = getFile(context);
+        synchronized (sLock) {
+            long modified = file.lastModified();
+            long length = file.length();
+            if (sCached != null && modified == sCachedModified && length == sCachedLength) {
+                return sCached;
+            }
+            sCached = null;
+            if (length < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer buffer = map(file, length);
+            if (buffer == null || !isValid(buffer)) {
+                return null;
+            }
+            sCached = new ForecastSnapshot(buffer);
+            sCachedModified = modified;
+            sCachedLength = length;
+            return sCached;
+        }
+    }
+
+    private static ByteBuffer map(File file, long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.load();
+            return buffer;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error mapping " + file, e);
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+        }
+    }
+
+    static boolean isValid(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE
+                || buffer.getInt(HEADER_MAGIC) != MAGIC
+                || buffer.getInt(HEADER_VERSION) != VERSION) {
+            return false;
+        }
+        long locationCount = buffer.getInt(HEADER_LOCATION_COUNT);
+        long dayCount = buffer.getInt(HEADER_DAY_COUNT);
+        if (locationCount < 0 || dayCount < 0 || HEADER_SIZE
+                + locationCount * LOCATION_RECORD_SIZE + dayCount * DAY_RECORD_SIZE != limit) {
+            return false;
+        }
+        return buffer.getInt(HEADER_CHECKSUM) == checksum(buffer, HEADER_SIZE, limit);
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int end) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[Math.min(4096, Math.max(1, end - start))];
+        ByteBuffer source = buffer.duplicate();
+        source.position(start);
+        source.limit(end);
+        while (source.hasRemaining()) {
+            int count = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Rebuilds the snapshot from the weather database and atomically replaces the file on disk.
+     * This function should not be called from the UI thread.
+     *
+     * @param context Context used to query the provider and locate the snapshot file
+     * @return true if a new snapshot was written
+     */
+    public static boolean write(Context context) {
+        Cursor locations = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                LocationCursor.LOCATION_PROJECTION,
+                null,
+                null,
+                WeatherContract.LocationEntry._ID + " ASC");
+        if (locations == null) {
+            return false;
+        }
+        Cursor weather = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherCursor.ALL_DAYS_PROJECTION,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " ASC, "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (weather == null) {
+            locations.close();
+            return false;
+        }
+        try {
+            return write(getFile(context), encode(locations, weather));
+        } finally {
+            locations.close();
+            weather.close();
+        }
+    }
+
+    static ByteBuffer encode(Cursor locationRows, Cursor weatherRows) {
+        LocationCursor locations = new LocationCursor(locationRows);
+        WeatherCursor weather = new WeatherCursor(weatherRows);
+        int locationCount = locations.getCount();
+        int dayCount = weather.getCount();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE
+                + locationCount * LOCATION_RECORD_SIZE + dayCount * DAY_RECORD_SIZE);
+        int daysStart = HEADER_SIZE + locationCount * LOCATION_RECORD_SIZE;
+
+        // Both cursors are sorted by location id, so we can walk them side by side.
+        int writtenLocations = 0;
+        int writtenDays = 0;
+        boolean hasDay = weather.moveToFirst();
+        while (locations.moveToNext()) {
+            long locationId = locations.getId();
+            byte[] setting = locations.getLocationSetting().getBytes(UTF_8);
+
+            // Skip any orphaned weather rows for locations we've already passed.
+            while (hasDay && weather.getLocKey() < locationId) {
+                hasDay = weather.moveToNext();
+            }
+            int firstDay = writtenDays;
+            while (hasDay && weather.getLocKey() == locationId) {
+                if (setting.length <= MAX_SETTING_BYTES) {
+                    putDay(buffer, daysStart + writtenDays * DAY_RECORD_SIZE, weather);
+                    writtenDays++;
+                }
+                hasDay = weather.moveToNext();
+            }
+            if (setting.length > MAX_SETTING_BYTES) {
+                // Readers fall back to the provider for locations we can't store.
+                Log.w(LOG_TAG, "Location setting too long for snapshot, skipping");
+                continue;
+            }
+
+            int offset = HEADER_SIZE + writtenLocations * LOCATION_RECORD_SIZE;
+            buffer.putLong(offset + LOCATION_ID, locationId);
+            buffer.putDouble(offset + LOCATION_LAT, locations.getCoordLat());
+            buffer.putDouble(offset + LOCATION_LONG, locations.getCoordLong());
+            buffer.putInt(offset + LOCATION_FIRST_DAY, firstDay);
+            buffer.putInt(offset + LOCATION_DAY_COUNT, writtenDays - firstDay);
+            buffer.putShort(offset + LOCATION_SETTING_LENGTH, (short) setting.length);
+            for (int i = 0; i < setting.length; i++) {
+                buffer.put(offset + LOCATION_SETTING + i, setting[i]);
+            }
+            writtenLocations++;
+        }
+
+        // Compact away any records we skipped above.
+        int skippedLocations = locationCount - writtenLocations;
+        if (skippedLocations > 0 || writtenDays < dayCount) {
+            ByteBuffer compacted = ByteBuffer.allocate(HEADER_SIZE
+                    + writtenLocations * LOCATION_RECORD_SIZE + writtenDays * DAY_RECORD_SIZE);
+            compacted.put(buffer.array(), 0, HEADER_SIZE + writtenLocations * LOCATION_RECORD_SIZE);
+            compacted.put(buffer.array(), daysStart, writtenDays * DAY_RECORD_SIZE);
+            buffer = compacted;
+        }
+
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_LOCATION_COUNT, writtenLocations);
+        buffer.putInt(HEADER_DAY_COUNT, writtenDays);
+        buffer.putLong(HEADER_WRITTEN_AT, System.currentTimeMillis());
+        buffer.putInt(HEADER_CHECKSUM, checksum(buffer, HEADER_SIZE, buffer.capacity()));
+        return buffer;
+    }
+
+    private static void putDay(ByteBuffer buffer, int offset, WeatherCursor weather) {
+        buffer.putLong(offset + DAY_DATE, weather.getDate());
+        buffer.putInt(offset + DAY_WEATHER_ID, weather.getWeatherId());
+        buffer.putFloat(offset + DAY_MAX_TEMP, (float) weather.getMaxTemp());
+        buffer.putFloat(offset + DAY_MIN_TEMP, (float) weather.getMinTemp());
+        buffer.putFloat(offset + DAY_HUMIDITY, weather.getHumidity());
+        buffer.putFloat(offset + DAY_PRESSURE, weather.getPressure());
+        buffer.putFloat(offset + DAY_WIND_SPEED, weather.getWindSpeed());
+        buffer.putFloat(offset + DAY_DEGREES, weather.getDegrees());
+
+        byte[] desc = weather.getShortDesc().getBytes(UTF_8);
+        int length = truncateUtf8(desc, MAX_DESC_BYTES);
+        buffer.putShort(offset + DAY_DESC_LENGTH, (short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + DAY_DESC + i, desc[i]);
+        }
+    }
+
+    // Never cut a multi-byte character in half.
+    private static int truncateUtf8(byte[] bytes, int max) {
+        if (bytes.length <= max) {
+            return bytes.length;
+        }
+        int length = max;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
+    static boolean write(File file, ByteBuffer buffer) {
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
+            out.write(buffer.array(), 0, buffer.capacity());
+            atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing snapshot", e);
+            if (out != null) {
+                atomicFile.failWrite(out);
+            }
+            return false;
+        }
+        synchronized (sLock) {
+            sCached = null;
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the snapshot, e.g. when the database it mirrors has been wiped.
+     */
+    public static void delete(Context context) {
+        new AtomicFile(getFile(context)).delete();
+        synchronized (sLock) {
+            sCached = null;
+        }
+    }
+
+    public long getWrittenAt() {
+        return mWrittenAt;
+    }
+
+    public int getLocationCount() {
+        return mLocationCount;
+    }
+
+    /**
+     * @param locationSetting The location string used to request updates from the server.
+     * @return the index of the location in this snapshot, or -1 if it isn't present.
+     */
+    public int findLocation(String locationSetting) {
+        byte[] setting = locationSetting.getBytes(UTF_8);
+        if (setting.length > MAX_SETTING_BYTES) {
+            return -1;
+        }
+        for (int location = 0; location < mLocationCount; location++) {
+            int offset = locationOffset(location);
+            if (mBuffer.getShort(offset + LOCATION_SETTING_LENGTH) != setting.length) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < setting.length && matches; i++) {
+                matches = mBuffer.get(offset + LOCATION_SETTING + i) == setting[i];
+            }
+            if (matches) {
+                return location;
+            }
+        }
+        return -1;
+    }
+
+    public long getLocationId(int location) {
+        return mBuffer.getLong(locationOffset(location) + LOCATION_ID);
+    }
+
+    public double getCoordLat(int location) {
+        return mBuffer.getDouble(locationOffset(location) + LOCATION_LAT);
+    }
+
+    public double getCoordLong(int location) {
+        return mBuffer.getDouble(locationOffset(location) + LOCATION_LONG);
+    }
+
+    public int getDayCount(int location) {
+        return mBuffer.getInt(locationOffset(location) + LOCATION_DAY_COUNT);
+    }
+
+    /**
+     * @param location Index of the location, as returned by {@link #findLocation(String)}
+     * @param startDate A normalized date
+     * @return the index of the first day on or after startDate, or the day count if there's none.
+     */
+    public int findFirstDay(int location, long startDate) {
+        int dayCount = getDayCount(location);
+        for (int day = 0; day < dayCount; day++) {
+            if (getDate(location, day) >= startDate) {
+                return day;
+            }
+        }
+        return dayCount;
+    }
+
+    public long getDate(int location, int day) {
+        return mBuffer.getLong(dayOffset(location, day) + DAY_DATE);
+    }
+
+    public int getWeatherId(int location, int day) {
+        return mBuffer.getInt(dayOffset(location, day) + DAY_WEATHER_ID);
+    }
+
+    public double getMaxTemp(int location, int day) {
+        return mBuffer.getFloat(dayOffset(location, day) + DAY_MAX_TEMP);
+    }
+
+    public double getMinTemp(int location, int day) {
+        return mBuffer.getFloat(dayOffset(location, day) + DAY_MIN_TEMP);
+    }
+
+    public float getHumidity(int location, int day) {
+        return mBuffer.getFloat(dayOffset(location, day) + DAY_HUMIDITY);
+    }
+
+    public float getPressure(int location, int day) {
+        return mBuffer.getFloat(dayOffset(location, day) + DAY_PRESSURE);
+    }
+
+    public float getWindSpeed(int location, int day) {
+        return mBuffer.getFloat(dayOffset(location, day) + DAY_WIND_SPEED);
+    }
+
+    public float getDegrees(int location, int day) {
+        return mBuffer.getFloat(dayOffset(location, day) + DAY_DEGREES);
+    }
+
+    public String getShortDesc(int location, int day) {
+        int offset = dayOffset(location, day);
+        byte[] desc = new byte[mBuffer.getShort(offset + DAY_DESC_LENGTH)];
+        for (int i = 0; i < desc.length; i++) {
+            desc[i] = mBuffer.get(offset + DAY_DESC + i);
+        }
+        return new String(desc, UTF_8);
+    }
+
+    private int locationOffset(int location) {
+        return HEADER_SIZE + location * LOCATION_RECORD_SIZE;
+    }
+
+    private int dayOffset(int location, int day) {
+        int firstDay = mBuffer.getInt(locationOffset(location) + LOCATION_FIRST_DAY);
+        return HEADER_SIZE + mLocationCount * LOCATION_RECORD_SIZE
+                + (firstDay + day) * DAY_RECORD_SIZE;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.text.format.DateUtils;
+
+import java.util.TimeZone;
+
+/**
+ * Julian day arithmetic for the dates stored in the database, which are the local midnight
+ * starting their day.  Plain arithmetic on a cached {@link TimeZone}, so it's cheap enough to
+ * use per row.
+ */
+public final class JulianDays {
+
+    // Same epoch as android.text.format.Time.EPOCH_JULIAN_DAY
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+
+    // TimeZone.getDefault() hands out a copy each time, so keep our own.
+    private static volatile TimeZone sTimeZone;
+
+    private JulianDays() {
+    }
+
+    /**
+     * Drops the cached time zone, e.g. when the system's has changed.
+     */
+    public static void invalidate() {
+        sTimeZone = null;
+    }
+
+    /**
+     * @return the time zone the arithmetic is done in, the same instance until
+     * {@link #invalidate()} is called.
+     */
+    public static TimeZone getTimeZone() {
+        TimeZone timeZone = sTimeZone;
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+            sTimeZone = timeZone;
+        }
+        return timeZone;
+    }
+
+    /**
+     * @return the julian day that the given instant falls on, in the local time zone.
+     */
+    public static int getJulianDay(long millis) {
+        long localMillis = millis + getTimeZone().getOffset(millis);
+        return (int) (localMillis / DateUtils.DAY_IN_MILLIS) + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * @return the local midnight that starts the given julian day.
+     */
+    public static long getStartOfJulianDay(int julianDay) {
+        TimeZone timeZone = getTimeZone();
+        long localMidnight = (long) (julianDay - EPOCH_JULIAN_DAY) * DateUtils.DAY_IN_MILLIS;
+        // The offset depends on the instant we're looking for, so guess with the offset at the
+        // local midnight, then correct the guess in case a DST change lies in between.
+        int offset = timeZone.getOffset(localMidnight - timeZone.getOffset(localMidnight));
+        long midnight = localMidnight - offset;
+        int actualOffset = timeZone.getOffset(midnight);
+        if (actualOffset != offset) {
+            // Midnight was skipped by a DST change, so the day starts at the end of the gap.
+            midnight = Math.max(midnight, localMidnight - actualOffset);
+        }
+        return midnight;
+    }
+
+    /**
+     * Normalizes an instant to the local midnight that starts its day, the way dates are stored
+     * in the database.
+     */
+    public static long normalizeDate(long millis) {
+        return getStartOfJulianDay(getJulianDay(millis));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/**
+ * A {@link Cursor} over location rows with typed getters, the location table's counterpart to
+ * {@link WeatherCursor}.
+ */
+public class LocationCursor extends CursorWrapper {
+
+    public static final String[] LOCATION_PROJECTION = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    /**
+     * Just the id, for looking up whether a location is stored.
+     */
+    public static final String[] ID_PROJECTION = {
+            LocationEntry._ID
+    };
+
+    private final int mIdIndex;
+    private final int mLocationSettingIndex;
+    private final int mCityNameIndex;
+    private final int mCoordLatIndex;
+    private final int mCoordLongIndex;
+
+    public LocationCursor(Cursor cursor) {
+        super(cursor);
+        mIdIndex = cursor.getColumnIndex(LocationEntry._ID);
+        mLocationSettingIndex = cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING);
+        mCityNameIndex = cursor.getColumnIndex(LocationEntry.COLUMN_CITY_NAME);
+        mCoordLatIndex = cursor.getColumnIndex(LocationEntry.COLUMN_COORD_LAT);
+        mCoordLongIndex = cursor.getColumnIndex(LocationEntry.COLUMN_COORD_LONG);
+    }
+
+    /**
+     * Queries locations and wraps the result.
+     *
+     * @return the wrapped cursor, or null if the query failed
+     */
+    public static LocationCursor query(ContentResolver resolver, Uri uri, String[] projection,
+                                       String selection, String[] selectionArgs,
+                                       String sortOrder) {
+        Cursor cursor = resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+        return cursor == null ? null : new LocationCursor(cursor);
+    }
+
+    public long getId() {
+        return getLong(mIdIndex);
+    }
+
+    public String getLocationSetting() {
+        return getString(mLocationSettingIndex);
+    }
+
+    public String getCityName() {
+        return getString(mCityNameIndex);
+    }
+
+    public double getCoordLat() {
+        return getDouble(mCoordLatIndex);
+    }
+
+    public double getCoordLong() {
+        return getDouble(mCoordLongIndex);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * A {@link Cursor} over weather rows with typed getters.  Column indices are looked up once when
+ * the cursor is wrapped, so reading a row doesn't do any string lookups, and the projections the
+ * app queries with are defined here instead of being repeated, with their index constants, in
+ * every class that reads weather.
+ *
+ * A getter may only be called if its column is in the projection the cursor was queried with.
+ */
+public class WeatherCursor extends CursorWrapper {
+
+    /**
+     * One day of the forecast for a location, as shown in lists, widgets, Muzei and the
+     * notification.
+     */
+    public static final String[] FORECAST_PROJECTION = {
+            // In this case the id needs to be fully qualified with a table name, since
+            // the content provider joins the location & weather tables in the background
+            // (both have an _id column)
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    /**
+     * Everything the detail view shows for one day.
+     */
+    public static final String[] DETAIL_PROJECTION = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            // This works because the WeatherProvider returns location data joined with
+            // weather data, even though they're stored in two different tables.
+            LocationEntry.COLUMN_LOCATION_SETTING
+    };
+
+    /**
+     * Every stored value of a day, keyed by location rather than joined with it.  Used when
+     * copying the whole table, e.g. into the forecast snapshot.
+     */
+    public static final String[] ALL_DAYS_PROJECTION = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    private final int mIdIndex;
+    private final int mLocKeyIndex;
+    private final int mDateIndex;
+    private final int mWeatherIdIndex;
+    private final int mShortDescIndex;
+    private final int mMaxTempIndex;
+    private final int mMinTempIndex;
+    private final int mHumidityIndex;
+    private final int mPressureIndex;
+    private final int mWindSpeedIndex;
+    private final int mDegreesIndex;
+    private final int mLocationSettingIndex;
+    private final int mCoordLatIndex;
+    private final int mCoordLongIndex;
+
+    public WeatherCursor(Cursor cursor) {
+        super(cursor);
+        mIdIndex = cursor.getColumnIndex(WeatherEntry._ID);
+        mLocKeyIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_LOC_KEY);
+        mDateIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+        mWeatherIdIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID);
+        mShortDescIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC);
+        mMaxTempIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+        mMinTempIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP);
+        mHumidityIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_HUMIDITY);
+        mPressureIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_PRESSURE);
+        mWindSpeedIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_WIND_SPEED);
+        mDegreesIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DEGREES);
+        mLocationSettingIndex = cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING);
+        mCoordLatIndex = cursor.getColumnIndex(LocationEntry.COLUMN_COORD_LAT);
+        mCoordLongIndex = cursor.getColumnIndex(LocationEntry.COLUMN_COORD_LONG);
+    }
+
+    /**
+     * Queries weather and wraps the result.
+     *
+     * @return the wrapped cursor, or null if the query failed
+     */
+    public static WeatherCursor query(ContentResolver resolver, Uri uri, String[] projection,
+                                      String selection, String[] selectionArgs,
+                                      String sortOrder) {
+        Cursor cursor = resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+        return cursor == null ? null : new WeatherCursor(cursor);
+    }
+
+    public long getId() {
+        return getLong(mIdIndex);
+    }
+
+    public long getLocKey() {
+        return getLong(mLocKeyIndex);
+    }
+
+    public long getDate() {
+        return getLong(mDateIndex);
+    }
+
+    public int getWeatherId() {
+        return getInt(mWeatherIdIndex);
+    }
+
+    public String getShortDesc() {
+        return getString(mShortDescIndex);
+    }
+
+    public double getMaxTemp() {
+        return getDouble(mMaxTempIndex);
+    }
+
+    public double getMinTemp() {
+        return getDouble(mMinTempIndex);
+    }
+
+    public float getHumidity() {
+        return getFloat(mHumidityIndex);
+    }
+
+    public float getPressure() {
+        return getFloat(mPressureIndex);
+    }
+
+    public float getWindSpeed() {
+        return getFloat(mWindSpeedIndex);
+    }
+
+    public float getDegrees() {
+        return getFloat(mDegreesIndex);
+    }
+
+    public String getLocationSetting() {
+        return getString(mLocationSettingIndex);
+    }
+
+    public double getCoordLat() {
+        return getDouble(mCoordLatIndex);
+    }
+
+    public double getCoordLong() {
+        return getDouble(mCoordLongIndex);
+    }
+}
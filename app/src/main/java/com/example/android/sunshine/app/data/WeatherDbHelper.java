@@ -16,7 +16,6 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.text.format.DateUtils;
@@ -102,19 +101,19 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     public void getWeather() {
         SQLiteDatabase db = this.getWritableDatabase();
         String query = "SELECT * FROM " + WeatherEntry.TABLE_NAME;
-        Cursor cursor = db.rawQuery(query, null);
+        WeatherCursor cursor = new WeatherCursor(db.rawQuery(query, null));
 
-        int one = 0;
-        long two = 0;
-        long three = 0;
+        long one = 0;
+        double two = 0;
+        double three = 0;
 
         while (cursor.moveToNext()) {
-            int currentDate = cursor.getInt(cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_DATE));
+            long currentDate = cursor.getDate();
             Log.d("SunshineSync: WDB", "Date: " + currentDate);
             if (DateUtils.isToday(currentDate)) {
-                one = cursor.getInt(cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_DATE));
-                two = cursor.getLong(cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_MIN_TEMP));
-                three = cursor.getLong(cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_MAX_TEMP));
+                one = currentDate;
+                two = cursor.getMinTemp();
+                three = cursor.getMaxTemp();
             }
         }
         cursor.close();
@@ -16,12 +16,14 @@
 
 package com.example.android.sunshine.app.gcm;
 
+import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
@@ -29,6 +31,7 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.image.ImagePipeline;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -95,7 +98,9 @@ public class MyGcmListenerService extends GcmListenerService {
         // icon as a bitmap. So we need to create that here from the resource ID, and pass the
         // object along in our notification builder. Generally, you want to use the app icon as the
         // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
+        // The pipeline keeps the decoded icon, so later pushes don't decode it again.
+        Bitmap largeIcon = ImagePipeline.get(this).getResource(ImagePipeline.CONSUMER_NOTIFICATION,
+                R.drawable.art_storm, getLargeIconSize());
         NotificationCompat.Builder mBuilder =
                 new NotificationCompat.Builder(this)
                         .setSmallIcon(R.drawable.art_clear)
@@ -107,4 +112,12 @@ public class MyGcmListenerService extends GcmListenerService {
         mBuilder.setContentIntent(contentIntent);
         mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
     }
+
+    @SuppressLint("InlinedApi")
+    private int getLargeIconSize() {
+        Resources resources = getResources();
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.image;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+/**
+ * App-wide memory cache of decoded weather art, shared by the forecast list and the detail view.
+ * Entries are keyed by art URL and size.  The URL is the art pack's format filled in with the
+ * condition, so this amounts to keying by art pack, condition and size.
+ *
+ * Only used from the main thread.
+ */
+public class ArtCache {
+    private static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    // The share of the app's memory class the cache may use
+    private static final int MEMORY_CLASS_DIVISOR = 8;
+
+    private static ArtCache sInstance;
+
+    private final LruCache<String, Bitmap> mCache;
+    private int mHitCount;
+    private int mMissCount;
+
+    private ArtCache(int maxBytes) {
+        mCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    public static ArtCache get(Context context) {
+        if (sInstance == null) {
+            ActivityManager activityManager =
+                    (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+            sInstance = new ArtCache(maxBytes);
+        }
+        return sInstance;
+    }
+
+    public static String key(String artUrl, int size) {
+        return artUrl + '@' + size;
+    }
+
+    /**
+     * @return the cached art, or null if it has to be loaded.  Counts towards the hit rate.
+     */
+    public Bitmap get(String key) {
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return true if the art is cached, without counting towards the hit rate.
+     */
+    public boolean contains(String key) {
+        return mCache.get(key) != null;
+    }
+
+    public void put(String key, Bitmap bitmap) {
+        mCache.put(key, bitmap);
+    }
+
+    /**
+     * Gives back memory when the system asks for it.  See
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public static void trimMemory(int level) {
+        if (sInstance == null) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            sInstance.mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            // Either the list isn't showing any more, or the system is about to start killing
+            // what is, so keep only what's needed for the list.
+            sInstance.mCache.trimToSize(sInstance.mCache.maxSize() / 2);
+        }
+    }
+
+    public static void clearMemory() {
+        if (sInstance != null) {
+            sInstance.mCache.evictAll();
+        }
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Logs the hit rate and memory use, when the log tag is at DEBUG.
+     */
+    public void logStats() {
+        int lookups = mHitCount + mMissCount;
+        if (lookups == 0 || !Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            return;
+        }
+        Log.d(LOG_TAG, "Art cache: " + mHitCount + " hits, " + mMissCount + " misses ("
+                + (100 * mHitCount / lookups) + "% hit rate), "
+                + mCache.size() / 1024 + " of " + mCache.maxSize() / 1024 + " KB used");
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.image;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.app.SettingsSnapshot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Disk cache of the selected art pack's images, decoded and encoded again at each size bucket
+ * the app shows them at.  It is filled by {@link ArtPackPrefetchService}.
+ *
+ * Every art pack gets its own directory, named after the cache version and the pack, holding
+ * the images and a manifest with each image's length and CRC32.  Images are only served if
+ * they're in the manifest and still match it.  Changing how images are stored means bumping
+ * {@link #VERSION}, which leaves the old directories to be evicted like any other pack's.
+ */
+public class ArtDiskCache {
+    private static final String LOG_TAG = ArtDiskCache.class.getSimpleName();
+
+    private static final int VERSION = 1;
+    private static final String ROOT_DIR = "art_packs";
+    private static final String MANIFEST = "manifest";
+
+    private static final Executor sManifestExecutor = Executors.newSingleThreadExecutor();
+
+    private static ArtDiskCache sInstance;
+
+    private final Context mContext;
+    private final File mRoot;
+
+    // The manifest of the last pack read, never changed once published.  Replaced under this,
+    // but read without locking so the UI thread never waits on the disk.
+    private volatile Manifest mManifest;
+    private final AtomicBoolean mManifestLoading = new AtomicBoolean();
+    // Held while changing the files on disk, so manifest updates don't overwrite each other
+    private final Object mWriteLock = new Object();
+
+    private ArtDiskCache(Context context) {
+        mContext = context.getApplicationContext();
+        mRoot = new File(mContext.getCacheDir(), ROOT_DIR);
+    }
+
+    public static synchronized ArtDiskCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtDiskCache(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the intact image for the current art pack, or null if it isn't cached.  Reads from
+     * disk, so this must not be called from the UI thread.
+     */
+    public byte[] read(String artUrl, int bucket) {
+        String artPack = SettingsSnapshot.get(mContext).artPack;
+        String name = fileName(artUrl, bucket);
+        String expected = getManifest(artPack).getProperty(name);
+        if (expected == null) {
+            return null;
+        }
+        File file = new File(getPackDir(artPack), name);
+        byte[] data = readFile(file);
+        if (data == null || !expected.equals(describe(data))) {
+            Log.w(LOG_TAG, "Discarding damaged cached art " + file);
+            remove(artPack, name);
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * @return the cached image file for the current art pack, or null if it isn't known to be
+     * cached.  Doesn't touch the disk, so it's safe to call from the UI thread.  The file is not
+     * checked against the manifest, so a caller that fails to decode it should
+     * {@link #invalidate(String, int)} it.
+     */
+    public File peekFile(String artUrl, int bucket) {
+        String artPack = SettingsSnapshot.get(mContext).artPack;
+        Manifest manifest = mManifest;
+        if (manifest == null || !artPack.equals(manifest.artPack)) {
+            loadManifestInBackground(artPack);
+            return null;
+        }
+        String name = fileName(artUrl, bucket);
+        return manifest.entries.containsKey(name) ? new File(getPackDir(artPack), name) : null;
+    }
+
+    /**
+     * Drops a cached image of the current art pack, so it's loaded from the network instead.
+     */
+    public void invalidate(final String artUrl, final int bucket) {
+        final String artPack = SettingsSnapshot.get(mContext).artPack;
+        sManifestExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                remove(artPack, fileName(artUrl, bucket));
+            }
+        });
+    }
+
+    /**
+     * @return true if the pack's image is cached and intact.
+     */
+    boolean contains(String artPack, String artUrl, int bucket) {
+        String name = fileName(artUrl, bucket);
+        String expected = getManifest(artPack).getProperty(name);
+        if (expected == null) {
+            return false;
+        }
+        byte[] data = readFile(new File(getPackDir(artPack), name));
+        if (data == null || !expected.equals(describe(data))) {
+            remove(artPack, name);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stores an image of the pack, replacing any earlier copy.
+     *
+     * @return true if the image was stored and reads back intact
+     */
+    boolean write(String artPack, String artUrl, int bucket, byte[] data) {
+        File dir = getPackDir(artPack);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + dir);
+            return false;
+        }
+        String name = fileName(artUrl, bucket);
+        File file = new File(dir, name);
+        if (!writeFile(file, data)) {
+            return false;
+        }
+        String description = describe(data);
+        byte[] written = readFile(file);
+        if (written == null || !description.equals(describe(written))) {
+            Log.e(LOG_TAG, "Cached art didn't read back intact: " + file);
+            file.delete();
+            return false;
+        }
+        synchronized (mWriteLock) {
+            Properties manifest = new Properties();
+            manifest.putAll(getManifest(artPack));
+            manifest.setProperty(name, description);
+            if (!saveManifest(artPack, manifest)) {
+                return false;
+            }
+            publishManifest(new Manifest(artPack, manifest), true);
+            return true;
+        }
+    }
+
+    /**
+     * Deletes the images of every pack but the given one, including those stored by earlier
+     * cache versions.
+     *
+     * @param artPack the pack to keep, or null to delete them all
+     */
+    void evictOtherPacks(String artPack) {
+        synchronized (mWriteLock) {
+            deleteOtherPacks(artPack == null ? null : getPackDir(artPack));
+        }
+        synchronized (this) {
+            if (mManifest != null && !mManifest.artPack.equals(artPack)) {
+                mManifest = null;
+            }
+        }
+    }
+
+    // Must hold mWriteLock
+    private void deleteOtherPacks(File keep) {
+        File[] versions = mRoot.listFiles();
+        if (versions == null) {
+            return;
+        }
+        for (File version : versions) {
+            File[] packs = version.listFiles();
+            if (packs != null) {
+                for (File pack : packs) {
+                    if (!pack.equals(keep)) {
+                        deleteRecursively(pack);
+                    }
+                }
+            }
+            if (keep == null || !version.equals(keep.getParentFile())) {
+                deleteRecursively(version);
+            }
+        }
+    }
+
+    private File getPackDir(String artPack) {
+        return new File(new File(mRoot, "v" + VERSION), hash(artPack));
+    }
+
+    private static String fileName(String artUrl, int bucket) {
+        return hash(artUrl) + "_" + bucket;
+    }
+
+    // The length and CRC32 the manifest records for an image
+    private static String describe(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return data.length + ":" + Long.toHexString(crc.getValue());
+    }
+
+    private void loadManifestInBackground(final String artPack) {
+        if (!mManifestLoading.compareAndSet(false, true)) {
+            return;
+        }
+        sManifestExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getManifest(artPack);
+                } finally {
+                    mManifestLoading.set(false);
+                }
+            }
+        });
+    }
+
+    /*
+        Returns the pack's manifest, reading it from disk unless it's the one published.  The
+        result must not be changed; copy it to make a new one.
+     */
+    private Properties getManifest(String artPack) {
+        Manifest published = mManifest;
+        if (published != null && artPack.equals(published.artPack)) {
+            return published.entries;
+        }
+        Properties manifest = new Properties();
+        File file = new File(getPackDir(artPack), MANIFEST);
+        if (file.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                manifest.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                Log.w(LOG_TAG, "Ignoring unreadable art manifest " + file, e);
+                manifest.clear();
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        return publishManifest(new Manifest(artPack, manifest), false).entries;
+    }
+
+    /*
+        Makes the manifest the published one and returns whichever is published afterwards.  One
+        just read from disk gives way to any already published for its pack, which is at least as
+        new; one just saved replaces it, but not a different pack's.
+     */
+    private synchronized Manifest publishManifest(Manifest manifest, boolean saved) {
+        Manifest published = mManifest;
+        if (published == null
+                || (saved ? published.artPack.equals(manifest.artPack)
+                        : !published.artPack.equals(manifest.artPack))) {
+            mManifest = manifest;
+            return manifest;
+        }
+        return saved ? manifest : published;
+    }
+
+    // Must hold mWriteLock
+    private boolean saveManifest(String artPack, Properties manifest) {
+        File dir = getPackDir(artPack);
+        File temp = new File(dir, MANIFEST + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            manifest.store(out, null);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Couldn't write the art manifest", e);
+            temp.delete();
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+        // Readers see either the old or the new manifest, never half of one
+        if (!temp.renameTo(new File(dir, MANIFEST))) {
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private void remove(String artPack, String name) {
+        synchronized (mWriteLock) {
+            Properties current = getManifest(artPack);
+            if (current.containsKey(name)) {
+                Properties manifest = new Properties();
+                manifest.putAll(current);
+                manifest.remove(name);
+                saveManifest(artPack, manifest);
+                // Forgotten even if the manifest couldn't be saved, the file is going anyway
+                publishManifest(new Manifest(artPack, manifest), true);
+            }
+        }
+        new File(getPackDir(artPack), name).delete();
+    }
+
+    private static byte[] readFile(File file) {
+        long length = file.length();
+        if (length <= 0 || length > Integer.MAX_VALUE) {
+            return null;
+        }
+        byte[] data = new byte[(int) length];
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) {
+                    return null;
+                }
+                read += count;
+            }
+            return data;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static boolean writeFile(File file, byte[] data) {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(data);
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Couldn't write " + file, e);
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing we can do about it
+            }
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(value.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Every Android device has both
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Manifest {
+        final String artPack;
+        final Properties entries;
+
+        Manifest(String artPack, Properties entries) {
+            this.artPack = artPack;
+            this.entries = entries;
+        }
+    }
+}
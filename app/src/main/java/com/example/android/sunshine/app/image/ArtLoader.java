@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.bumptech.glide.BitmapTypeRequest;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Loads art pack images at the exact size they're shown at, through the {@link ArtCache}.
+ * Requests for the same image are only made once, however many views are waiting for it.
+ *
+ * Only used from the main thread.
+ */
+public class ArtLoader {
+    private static final String LOG_TAG = ArtLoader.class.getSimpleName();
+
+    private static ArtLoader sInstance;
+
+    private final Context mContext;
+    private final ArtCache mCache;
+    // Views waiting on each image being loaded; empty for preloads nobody is showing yet.  Held
+    // weakly, so a slow load doesn't keep a destroyed activity's views alive.
+    private final HashMap<String, ArrayList<WeakReference<ImageView>>> mPending =
+            new HashMap<String, ArrayList<WeakReference<ImageView>>>();
+
+    private ArtLoader(Context context) {
+        // Loads outlive any one screen, so they're tied to the application rather than an
+        // activity.
+        mContext = context.getApplicationContext();
+        mCache = ArtCache.get(mContext);
+    }
+
+    public static ArtLoader get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtLoader(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the art in the view, showing the local art for the condition until it's loaded, or
+     * if it can't be.
+     *
+     * @param size the width and height the view shows the art at, in pixels
+     */
+    public void load(ImageView view, String artUrl, int size, int fallbackResource) {
+        String key = ArtCache.key(artUrl, size);
+        view.setTag(R.id.art_loader_key, key);
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        view.setImageResource(fallbackResource);
+        request(key, artUrl, size, view);
+    }
+
+    /**
+     * Loads the art into the cache ahead of it being shown.
+     */
+    public void preload(String artUrl, int size) {
+        String key = ArtCache.key(artUrl, size);
+        if (mPending.containsKey(key) || mCache.contains(key)) {
+            return;
+        }
+        request(key, artUrl, size, null);
+    }
+
+    private void request(final String key, final String artUrl, int size, ImageView view) {
+        ArrayList<WeakReference<ImageView>> waiting = mPending.get(key);
+        if (waiting == null) {
+            waiting = new ArrayList<WeakReference<ImageView>>();
+            mPending.put(key, waiting);
+            // Use the prefetched copy of the art pack if there is one, it's already close to size.
+            final int bucket = ImagePipeline.toBucket(size);
+            final File cached = ArtDiskCache.get(mContext).peekFile(artUrl, bucket);
+            BitmapTypeRequest<?> request = cached != null
+                    ? Glide.with(mContext).load(cached).asBitmap()
+                    : Glide.with(mContext).load(artUrl).asBitmap();
+            // The request is never cleared, so Glide won't take the bitmap back for reuse
+            // while it's in our cache.
+            request.fitCenter()
+                    .into(new SimpleTarget<Bitmap>(size, size) {
+                        @Override
+                        public void onResourceReady(Bitmap bitmap,
+                                                    GlideAnimation<? super Bitmap> animation) {
+                            mCache.put(key, bitmap);
+                            deliver(key, bitmap);
+                        }
+
+                        @Override
+                        public void onLoadFailed(Exception e, Drawable errorDrawable) {
+                            Log.e(LOG_TAG, "Error loading art from " + key, e);
+                            if (cached != null) {
+                                // Go to the network next time
+                                ArtDiskCache.get(mContext).invalidate(artUrl, bucket);
+                            }
+                            // Waiting views keep showing the local art
+                            mPending.remove(key);
+                        }
+                    });
+        }
+        if (view != null) {
+            waiting.add(new WeakReference<ImageView>(view));
+        }
+    }
+
+    private void deliver(String key, Bitmap bitmap) {
+        ArrayList<WeakReference<ImageView>> waiting = mPending.remove(key);
+        if (waiting == null) {
+            return;
+        }
+        for (WeakReference<ImageView> reference : waiting) {
+            ImageView view = reference.get();
+            // Skip views that are gone or have been rebound to other art in the meantime
+            if (view != null && key.equals(view.getTag(R.id.art_loader_key))) {
+                view.setImageBitmap(bitmap);
+            }
+        }
+    }
+}
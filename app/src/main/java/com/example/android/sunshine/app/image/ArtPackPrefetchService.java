@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.image;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ConditionRegistry;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.google.android.gms.gcm.GcmNetworkManager;
+import com.google.android.gms.gcm.GcmTaskService;
+import com.google.android.gms.gcm.OneoffTask;
+import com.google.android.gms.gcm.Task;
+import com.google.android.gms.gcm.TaskParams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Downloads every image of the selected art pack while on an unmetered network, and stores it
+ * in the {@link ArtDiskCache} at each size bucket the app shows art at.  After that the list,
+ * the detail view, the widgets and the notification don't go to the network for art at all.
+ */
+public class ArtPackPrefetchService extends GcmTaskService {
+    private static final String LOG_TAG = ArtPackPrefetchService.class.getSimpleName();
+
+    private static final String TASK_TAG = "art_pack_prefetch";
+    // The latest the task should run, in seconds.  It still needs an unmetered network, so without
+    // one it waits past this until there is.
+    private static final long EXECUTION_WINDOW_END = 6 * 60 * 60;
+
+    // Art pack images are photos of a few hundred KB, anything much bigger isn't one.
+    private static final int MAX_IMAGE_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Prefetches the selected art pack, replacing any prefetch that hasn't run yet.
+     */
+    public static void schedule(Context context) {
+        OneoffTask task = new OneoffTask.Builder()
+                .setService(ArtPackPrefetchService.class)
+                .setTag(TASK_TAG)
+                .setExecutionWindow(0, EXECUTION_WINDOW_END)
+                .setRequiredNetwork(Task.NETWORK_STATE_UNMETERED)
+                .setUpdateCurrent(true)
+                .build();
+        GcmNetworkManager.getInstance(context).schedule(task);
+    }
+
+    @Override
+    public void onInitializeTasks() {
+        // Scheduled tasks are dropped when the app is updated, so catch up on the current pack.
+        super.onInitializeTasks();
+        schedule(this);
+    }
+
+    @Override
+    public int onRunTask(TaskParams params) {
+        SettingsSnapshot settings = SettingsSnapshot.get(this);
+        ArtDiskCache cache = ArtDiskCache.get(this);
+        if (settings.usingLocalGraphics) {
+            cache.evictOtherPacks(null);
+            return GcmNetworkManager.RESULT_SUCCESS;
+        }
+        String artPack = settings.artPack;
+        cache.evictOtherPacks(artPack);
+
+        ImagePipeline pipeline = ImagePipeline.get(this);
+        int[] buckets = getBucketsInUse(this);
+        boolean complete = true;
+        for (String artUrl : ConditionRegistry.getArtUrls(artPack)) {
+            if (!artPack.equals(SettingsSnapshot.get(this).artPack)) {
+                // The pack changed under us, the task scheduled for the new one takes over.
+                return GcmNetworkManager.RESULT_SUCCESS;
+            }
+            byte[] source = null;
+            for (int bucket : buckets) {
+                if (cache.contains(artPack, artUrl, bucket)) {
+                    continue;
+                }
+                if (source == null) {
+                    source = download(artUrl);
+                    if (source == null) {
+                        complete = false;
+                        break;
+                    }
+                }
+                Bitmap bitmap = pipeline.decodeBytes(source, bucket);
+                if (bitmap == null) {
+                    // Retrying won't fix the image, the art is loaded on demand instead.
+                    Log.e(LOG_TAG, "Couldn't decode art from " + artUrl);
+                    break;
+                }
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+                pipeline.release(bitmap);
+                if (!cache.write(artPack, artUrl, bucket, png.toByteArray())) {
+                    complete = false;
+                }
+            }
+        }
+        return complete ? GcmNetworkManager.RESULT_SUCCESS : GcmNetworkManager.RESULT_RESCHEDULE;
+    }
+
+    /**
+     * @return the size buckets of every place art is shown at, smallest first.
+     */
+    @SuppressLint("InlinedApi")
+    static int[] getBucketsInUse(Context context) {
+        Resources resources = context.getResources();
+        int largeIconSize = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        int[] buckets = {
+                ImagePipeline.toBucket(resources.getDimensionPixelSize(R.dimen.list_icon)),
+                ImagePipeline.toBucket(resources.getDimensionPixelSize(R.dimen.today_icon)),
+                ImagePipeline.toBucket(largeIconSize)
+        };
+        Arrays.sort(buckets);
+        int count = 0;
+        for (int bucket : buckets) {
+            if (count == 0 || buckets[count - 1] != bucket) {
+                buckets[count++] = bucket;
+            }
+        }
+        return Arrays.copyOf(buckets, count);
+    }
+
+    private static byte[] download(String artUrl) {
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        try {
+            urlConnection = (HttpURLConnection) new URL(artUrl).openConnection();
+            urlConnection.connect();
+            if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error " + urlConnection.getResponseCode() + " loading " + artUrl);
+                return null;
+            }
+            inputStream = urlConnection.getInputStream();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[16 * 1024];
+            int count;
+            while ((count = inputStream.read(chunk)) != -1) {
+                buffer.write(chunk, 0, count);
+                if (buffer.size() > MAX_IMAGE_BYTES) {
+                    Log.e(LOG_TAG, "Art too large: " + artUrl);
+                    return null;
+                }
+            }
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error loading " + artUrl, e);
+            return null;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.image;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Preloads the art of the rows just past the visible ones, in the direction the list is
+ * scrolling, so they're in the {@link ArtCache} by the time they're bound.
+ */
+public class ArtPreloader extends RecyclerView.OnScrollListener {
+
+    public interface PreloadProvider {
+        /**
+         * Starts loading whatever the row at the position will show.
+         */
+        void preload(int position);
+    }
+
+    private final PreloadProvider mProvider;
+    private final int mMaxPreload;
+    // The positions preloaded last time, which don't need asking for again
+    private int mLastStart;
+    private int mLastEnd;
+
+    public ArtPreloader(PreloadProvider provider, int maxPreload) {
+        mProvider = provider;
+        mMaxPreload = maxPreload;
+    }
+
+    /**
+     * Forgets what has been preloaded, e.g. because the rows have changed.
+     */
+    public void reset() {
+        mLastStart = 0;
+        mLastEnd = 0;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        RecyclerView.Adapter adapter = recyclerView.getAdapter();
+        if (!(layoutManager instanceof LinearLayoutManager) || adapter == null) {
+            return;
+        }
+        LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+        int first = linearLayoutManager.findFirstVisibleItemPosition();
+        int last = linearLayoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int start;
+        int end;
+        if (dy >= 0) {
+            start = last + 1;
+            end = Math.min(last + 1 + mMaxPreload, adapter.getItemCount());
+        } else {
+            start = Math.max(first - mMaxPreload, 0);
+            end = first;
+        }
+        for (int position = start; position < end; position++) {
+            if (position < mLastStart || position >= mLastEnd) {
+                mProvider.preload(position);
+            }
+        }
+        mLastStart = start;
+        mLastEnd = end;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.image;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.Utility;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Produces the weather bitmaps used outside of the app's own screens: the notification large
+ * icon and the detail widget's rows.
+ *
+ * Requested sizes are rounded up to a few size buckets, so consumers asking for nearly the same
+ * size share one decode.  Each consumer has its own cache budget, so one of them can't push out
+ * the others' bitmaps, and local resources are decoded into bitmaps from Glide's pool, which is
+ * also where intermediate decodes go back to.  Bitmaps handed out are never put back into the
+ * pool, since the caller may still be using them.
+ *
+ * Loading may hit the disk or the network, so this must not be used from the UI thread.
+ */
+public class ImagePipeline {
+    private static final String LOG_TAG = ImagePipeline.class.getSimpleName();
+
+    public static final int CONSUMER_NOTIFICATION = 0;
+    public static final int CONSUMER_WIDGET = 1;
+    private static final int CONSUMER_COUNT = 2;
+
+    // Each consumer's cache gets 1/n of the app's memory class
+    private static final int[] BUDGET_DIVISORS = {
+            64, // CONSUMER_NOTIFICATION
+            32  // CONSUMER_WIDGET
+    };
+
+    private static final int[] SIZE_BUCKETS = {32, 48, 64, 96, 128, 192, 256, 384, 512};
+    private static final int LARGE_SIZE_STEP = 128;
+
+    private static ImagePipeline sInstance;
+
+    private final Context mContext;
+    private final BitmapPool mPool;
+    private final LruCache<String, Bitmap>[] mCaches;
+
+    @SuppressWarnings("unchecked")
+    private ImagePipeline(Context context) {
+        mContext = context.getApplicationContext();
+        mPool = Glide.get(mContext).getBitmapPool();
+
+        ActivityManager activityManager =
+                (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassBytes = activityManager.getMemoryClass() * 1024 * 1024;
+        mCaches = new LruCache[CONSUMER_COUNT];
+        for (int consumer = 0; consumer < CONSUMER_COUNT; consumer++) {
+            mCaches[consumer] = new LruCache<String, Bitmap>(
+                    memoryClassBytes / BUDGET_DIVISORS[consumer]) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getRowBytes() * bitmap.getHeight();
+                }
+            };
+        }
+    }
+
+    public static synchronized ImagePipeline get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImagePipeline(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the art for the condition from the selected art pack, or the local art if the
+     * pack's image can't be loaded.  null only if the local art can't be decoded either.
+     */
+    public Bitmap getArt(int consumer, int weatherId, int size) {
+        if (!SettingsSnapshot.get(mContext).usingLocalGraphics) {
+            Bitmap art = getRemoteArt(consumer, weatherId, size);
+            if (art != null) {
+                return art;
+            }
+        }
+        return getResource(consumer, Utility.getArtResourceForWeatherCondition(weatherId), size);
+    }
+
+    /**
+     * @return the art for the condition from the selected art pack, or null if it can't be
+     * loaded.
+     */
+    public Bitmap getRemoteArt(int consumer, int weatherId, int size) {
+        String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        if (artUrl == null) {
+            return null;
+        }
+        int bucket = toBucket(size);
+        String key = artUrl + '@' + bucket;
+        LruCache<String, Bitmap> cache = mCaches[consumer];
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        // Prefer the copy prefetched for the art pack, if it's intact
+        byte[] cached = ArtDiskCache.get(mContext).read(artUrl, bucket);
+        if (cached != null) {
+            bitmap = decodeBytes(cached, bucket);
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+                return bitmap;
+            }
+        }
+        try {
+            // The request is never cleared, so Glide won't take the bitmap back for reuse.
+            bitmap = Glide.with(mContext)
+                    .load(artUrl)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(bucket, bucket)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+            return null;
+        }
+        cache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * @return the drawable resource decoded to fit within the size bucket, or null if it can't
+     * be decoded.
+     */
+    public Bitmap getResource(int consumer, int resourceId, int size) {
+        int bucket = toBucket(size);
+        String key = "res:" + resourceId + '@' + bucket;
+        LruCache<String, Bitmap> cache = mCaches[consumer];
+        Bitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            bitmap = decodeResource(resourceId, bucket);
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Gives back memory when the system asks for it, if the pipeline has been used at all.  See
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public static synchronized void trimMemory(int level) {
+        if (sInstance == null) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            clearMemory();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            for (LruCache<String, Bitmap> cache : sInstance.mCaches) {
+                cache.trimToSize(cache.maxSize() / 2);
+            }
+        }
+    }
+
+    public static synchronized void clearMemory() {
+        if (sInstance == null) {
+            return;
+        }
+        for (LruCache<String, Bitmap> cache : sInstance.mCaches) {
+            cache.evictAll();
+        }
+    }
+
+    static int toBucket(int size) {
+        for (int bucket : SIZE_BUCKETS) {
+            if (size <= bucket) {
+                return bucket;
+            }
+        }
+        return (size + LARGE_SIZE_STEP - 1) / LARGE_SIZE_STEP * LARGE_SIZE_STEP;
+    }
+
+    private Bitmap decodeResource(int resourceId, int bucket) {
+        return decode(resourceId, null, bucket);
+    }
+
+    /**
+     * @return the encoded image decoded to fit within the size bucket, or null if it can't be
+     * decoded.  Pass the bitmap to {@link #release(Bitmap)} if it isn't kept.
+     */
+    Bitmap decodeBytes(byte[] data, int bucket) {
+        return decode(0, data, bucket);
+    }
+
+    /**
+     * Hands a bitmap from {@link #decodeBytes(byte[], int)} back for reuse.
+     */
+    void release(Bitmap bitmap) {
+        mPool.put(bitmap);
+    }
+
+    // Decodes either the resource or, if given, the encoded data
+    private Bitmap decode(int resourceId, byte[] data, int bucket) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // Work in the resource's own pixels, the size bucket already accounts for density.
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        decode(resourceId, data, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Subsample as far as we can without going below the bucket, then scale the rest.
+        int largest = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (largest / (sampleSize * 2) >= bucket) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            setReusableBitmap(options,
+                    (options.outWidth + sampleSize - 1) / sampleSize,
+                    (options.outHeight + sampleSize - 1) / sampleSize);
+        }
+        Bitmap decoded;
+        try {
+            decoded = decode(resourceId, data, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            // The pooled bitmap couldn't be reused after all
+            mPool.put(options.inBitmap);
+            options.inBitmap = null;
+            decoded = decode(resourceId, data, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+
+        largest = Math.max(decoded.getWidth(), decoded.getHeight());
+        if (largest <= bucket) {
+            return decoded;
+        }
+        float scale = (float) bucket / largest;
+        int width = Math.max(1, Math.round(decoded.getWidth() * scale));
+        int height = Math.max(1, Math.round(decoded.getHeight() * scale));
+        Bitmap scaled = mPool.get(width, height, Bitmap.Config.ARGB_8888);
+        if (scaled == null) {
+            scaled = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        Matrix matrix = new Matrix();
+        matrix.setScale((float) width / decoded.getWidth(), (float) height / decoded.getHeight());
+        new Canvas(scaled).drawBitmap(decoded, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        mPool.put(decoded);
+        return scaled;
+    }
+
+    private Bitmap decode(int resourceId, byte[] data, BitmapFactory.Options options) {
+        if (data != null) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        return BitmapFactory.decodeResource(mContext.getResources(), resourceId, options);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void setReusableBitmap(BitmapFactory.Options options, int width, int height) {
+        // Decoded bitmaps have to be mutable to go back into the pool afterwards.
+        options.inMutable = true;
+        options.inBitmap = mPool.get(width, height, Bitmap.Config.ARGB_8888);
+    }
+}
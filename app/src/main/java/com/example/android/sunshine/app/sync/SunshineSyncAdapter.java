@@ -3,6 +3,7 @@ package com.example.android.sunshine.app.sync;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
@@ -16,43 +17,38 @@ import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.DateUtils;
-import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.DateEngine;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.StartupTiming;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.LocationCursor;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherCursor;
 import com.example.android.sunshine.app.data.WeatherDbHelper;
+import com.example.android.sunshine.app.image.ArtPackPrefetchService;
+import com.example.android.sunshine.app.image.ImagePipeline;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -61,9 +57,9 @@ import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
+public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
@@ -76,32 +72,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
-    @Override
-    public void onConnected(Bundle bundle) {
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-    }
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -112,15 +82,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    private GoogleApiClient mGoogleApiClient;
+    // Whether the sync account is known to exist in this process, and whether we've already
+    // kicked off the background bootstrap that establishes it.
+    private static volatile boolean sAccountReady;
+    private static final AtomicBoolean sBootstrapStarted = new AtomicBoolean();
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
-
-        // Initiating here otherwise only the first push works
-        mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .build();
     }
 
     @Override
@@ -289,6 +257,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
             long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+            if (locationId == -1) {
+                return;
+            }
 
             // Insert the new weather information into the database
             Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
@@ -301,14 +272,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // current day, we're going to take advantage of that to get a nice
             // normalized UTC date for all of our weather.
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
             // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
+            int julianStartDay = DateEngine.getJulianDay(System.currentTimeMillis());
 
             for(int i = 0; i < weatherArray.length(); i++) {
                 // These are the values that will be collected.
@@ -328,7 +293,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 JSONObject dayForecast = weatherArray.getJSONObject(i);
 
                 // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+                dateTime = DateEngine.getStartOfJulianDay(julianStartDay+i);
 
                 pressure = dayForecast.getDouble(OWM_PRESSURE);
                 humidity = dayForecast.getInt(OWM_HUMIDITY);
@@ -362,13 +327,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
 
                 cVVector.add(weatherValues);
-
-                // Send to wearable from here since dateTime hasn't been converted and saves having
-                // to get from local DB.
-                if (DateUtils.isToday(dateTime)) {
-                    Log.d(LOG_TAG, "Going to send: " + weatherId + ", " + high + ", " + low + ", " + dateTime + ", " + System.currentTimeMillis());
-                    notifyWearable(high, low, weatherId);
-                }
             }
 
             int inserted = 0;
@@ -381,10 +339,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 // delete old data so we don't build up an endless history
                 getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
+                        new String[]{Long.toString(DateEngine.getStartOfJulianDay(julianStartDay - 1))});
+
+                // Mirror the committed data into the snapshot before telling anyone about it,
+                // since widgets and Muzei read from there first.
+                ForecastSnapshot.write(getContext());
 
                 updateWidgets();
                 updateMuzei();
+                notifyWearable();
                 notifyWeather();
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
@@ -415,43 +378,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
     }
 
-    private Asset createAssetFromResourceId(int resourceId) {
-        // First get the image, then do the conversion as per tutorials.
-        final Bitmap bitmap = BitmapFactory.decodeResource(getContext().getResources(), resourceId);
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
-    }
-
-    private void notifyWearable(double high, double low, int weatherId) {
-        Context context = getContext();
-        Log.d(LOG_TAG, "notifyWearable():");
-        Log.d(LOG_TAG, "========================================================================");
-
-        mGoogleApiClient.connect();
-
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create("/weather-details");
-        putDataMapRequest.getDataMap().putString("high_temp", Utility.formatTemperature(getContext(), high));
-        putDataMapRequest.getDataMap().putString("low_temp", Utility.formatTemperature(getContext(), low));
-        // Need to get local weatherId reference, then conver to bitmap, then send it
-        Asset asset = createAssetFromResourceId(Utility.getIconResourceForWeatherCondition(weatherId));
-        putDataMapRequest.getDataMap().putAsset("weather_id", asset);
-
-        // This is just to force the wearable to always update for sake of testing
-        // putDataMapRequest.getDataMap().putLong("time",System.currentTimeMillis());
-
-        PutDataRequest request = putDataMapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        if (!dataItemResult.getStatus().isSuccess()) {
-                            Log.e(LOG_TAG, "Failed to send data!");
-                        } else {
-                            Log.d(LOG_TAG, "Successfully sent data!");
-                        }
-                    }
-                });
+    private void notifyWearable() {
+        // Read back from the snapshot, so the watch gets the days that were just committed
+        WearableSync.push(getContext());
     }
 
     private void notifyWeather() {
@@ -474,18 +403,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
 
                 // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+                WeatherCursor cursor = WeatherCursor.query(context.getContentResolver(),
+                        weatherUri, WeatherCursor.FORECAST_PROJECTION, null, null, null);
+                if (cursor == null) {
+                    return;
+                }
 
                 if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                    int weatherId = cursor.getWeatherId();
+                    double high = cursor.getMaxTemp();
+                    double low = cursor.getMinTemp();
+                    String desc = cursor.getShortDesc();
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
 
                     // On Honeycomb and higher devices, we can retrieve the size of the large icon
                     // Prior to that, we use a fixed size
@@ -499,18 +430,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                             : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
 
                     // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
+                    Bitmap largeIcon = ImagePipeline.get(context).getArt(
+                            ImagePipeline.CONSUMER_NOTIFICATION, weatherId,
+                            Math.max(largeIconWidth, largeIconHeight));
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -568,22 +490,24 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
      * @param cityName A human-readable city name, e.g "Mountain View"
      * @param lat the latitude of the city
      * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @return the row ID of the added location, or -1 if the provider couldn't be queried.
      */
     long addLocation(String locationSetting, String cityName, double lat, double lon) {
         long locationId;
 
         // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
+        LocationCursor locationCursor = LocationCursor.query(getContext().getContentResolver(),
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
+                LocationCursor.ID_PROJECTION,
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
+        if (locationCursor == null) {
+            return -1;
+        }
 
         if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
+            locationId = locationCursor.getId();
         } else {
             // Now that the content provider is set up, inserting rows of data is pretty simple.
             // First create a ContentValues object to hold the data you want to insert.
@@ -696,10 +620,70 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
          * Finally, let's do a sync to get things started
          */
         syncImmediately(context);
+
+        /*
+         * And fetch the default art pack for offline use, since it's only prefetched otherwise
+         * when the user picks another one
+         */
+        ArtPackPrefetchService.schedule(context);
     }
 
+    /**
+     * Makes sure the sync account exists and periodic syncs are scheduled.  This is safe to call
+     * from the UI thread as often as you like: the AccountManager and ContentResolver work happens
+     * at most once per process, on a background thread.  Periodic syncs are only set up again
+     * when the account has to be created.
+     *
+     * @param context The context used to access the account service
+     */
     public static void initializeSyncAdapter(Context context) {
-        getSyncAccount(context);
+        if (sAccountReady || !sBootstrapStarted.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        Thread bootstrap = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                beginTraceSection("SunshineSyncBootstrap");
+                long start = SystemClock.uptimeMillis();
+                try {
+                    bootstrapSyncAccount(appContext);
+                } finally {
+                    endTraceSection();
+                }
+                Log.d(StartupTiming.LOG_TAG, "Sync bootstrap took "
+                        + (SystemClock.uptimeMillis() - start) + "ms off the main thread");
+            }
+        }, "SunshineSyncBootstrap");
+        bootstrap.start();
+    }
+
+    private static void bootstrapSyncAccount(Context context) {
+        // Checked on every start rather than remembered, since the account can be removed by the
+        // user and preferences can be restored onto a device that never had it.
+        Account[] accounts = AccountManager.get(context)
+                .getAccountsByType(context.getString(R.string.sync_account_type));
+        if (accounts.length > 0 || null != getSyncAccount(context)) {
+            sAccountReady = true;
+        } else {
+            // Let a later call try again.
+            sBootstrapStarted.set(false);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTraceSection(String sectionName) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(sectionName);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTraceSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
     }
 
     /**
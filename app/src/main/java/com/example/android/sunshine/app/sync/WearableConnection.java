@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.CapabilityApi;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one connection to the wearable data layer the app's syncs share, and what it knows about
+ * the watches on the other end.
+ *
+ * The client is connected on demand with a bounded wait and let go of a little after the last
+ * user is done, so back to back pushes reuse it.  Phones without Android Wear fail to connect with
+ * {@link ConnectionResult#API_UNAVAILABLE}, after which no further attempts are made.  Whether a
+ * watch running our face is reachable is asked of the {@link CapabilityApi} once, then kept up to
+ * date by {@link WearableNodeListenerService}, so syncs on phones without a watch do no wear work.
+ *
+ * Connecting blocks, so this must not be used from the UI thread.
+ */
+final class WearableConnection {
+    private static final String LOG_TAG = WearableConnection.class.getSimpleName();
+
+    /**
+     * Declared by the watch module, see its wear.xml.
+     */
+    static final String CAPABILITY_WATCH_FACE = "sunshine_watch_face";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long IDLE_DISCONNECT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static WearableConnection sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Object mConnectLock = new Object();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WearableConnection.this) {
+                if (mUsers == 0) {
+                    mGoogleApiClient.disconnect();
+                }
+            }
+        }
+    };
+
+    // Guarded by this
+    private int mUsers;
+    // Set for good once connecting finds the phone has no Android Wear
+    private volatile boolean mApiUnavailable;
+    // Whether a watch with our face is reachable, null until known
+    private volatile Boolean mHasCapableNode;
+
+    private WearableConnection(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    static synchronized WearableConnection get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableConnection(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Connects the client unless it already is.  Every call must be matched by a call to
+     * {@link #release()}, whether or not it connected.
+     *
+     * @return the connected client, or null if it couldn't connect in time
+     */
+    GoogleApiClient acquire() {
+        synchronized (this) {
+            mUsers++;
+            mMainHandler.removeCallbacks(mDisconnect);
+        }
+        if (mApiUnavailable) {
+            return null;
+        }
+        // One connect at a time, without holding up the idle disconnect on the main thread
+        synchronized (mConnectLock) {
+            if (mGoogleApiClient.isConnected()) {
+                return mGoogleApiClient;
+            }
+            ConnectionResult connectionResult = mGoogleApiClient.blockingConnect(
+                    CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (connectionResult.isSuccess()) {
+                return mGoogleApiClient;
+            }
+            if (connectionResult.getErrorCode() == ConnectionResult.API_UNAVAILABLE) {
+                Log.d(LOG_TAG, "No Android Wear on this phone, not syncing to watches");
+                mApiUnavailable = true;
+            } else {
+                Log.e(LOG_TAG, "Couldn't connect to the wearable API: " + connectionResult);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Disconnects the client after a while, unless it's acquired again first.
+     */
+    void release() {
+        synchronized (this) {
+            mUsers--;
+            if (mUsers == 0) {
+                mMainHandler.postDelayed(mDisconnect, IDLE_DISCONNECT_MS);
+            }
+        }
+    }
+
+    /**
+     * @return true if a watch running our face is reachable, asking the data layer only when
+     * that isn't already known.
+     */
+    boolean hasCapableNode() {
+        if (mApiUnavailable) {
+            return false;
+        }
+        Boolean hasCapableNode = mHasCapableNode;
+        if (hasCapableNode != null) {
+            return hasCapableNode;
+        }
+        GoogleApiClient googleApiClient = acquire();
+        try {
+            if (googleApiClient == null) {
+                return false;
+            }
+            CapabilityApi.GetCapabilityResult result = Wearable.CapabilityApi.getCapability(
+                    googleApiClient, CAPABILITY_WATCH_FACE, CapabilityApi.FILTER_REACHABLE)
+                    .await();
+            if (!result.getStatus().isSuccess()) {
+                Log.e(LOG_TAG, "Couldn't look up watches: " + result.getStatus());
+                return false;
+            }
+            return setCapableNodes(result.getCapability().getNodes());
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Records the reachable watches running our face, as reported by the data layer.
+     *
+     * @return true if there are any
+     */
+    boolean setCapableNodes(Set<Node> nodes) {
+        boolean hasCapableNode = !nodes.isEmpty();
+        mHasCapableNode = hasCapableNode;
+        return hasCapableNode;
+    }
+}
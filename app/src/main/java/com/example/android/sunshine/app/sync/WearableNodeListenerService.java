@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Intent;
+import android.util.Log;
+
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Keeps {@link WearableConnection} up to date on which watches running our face are reachable,
+ * and brings a watch that has just connected up to date, since syncs skip the watch while none
+ * is reachable.
+ */
+public class WearableNodeListenerService extends WearableListenerService {
+    private static final String LOG_TAG = WearableNodeListenerService.class.getSimpleName();
+
+    @Override
+    public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+        if (!WearableConnection.CAPABILITY_WATCH_FACE.equals(capabilityInfo.getName())) {
+            return;
+        }
+        boolean hasCapableNode = WearableConnection.get(this)
+                .setCapableNodes(capabilityInfo.getNodes());
+        Log.d(LOG_TAG, capabilityInfo.getNodes().size() + " watches with the face reachable");
+        if (hasCapableNode) {
+            // Nothing is sent if the watch already has the current forecast
+            startService(new Intent(this, WearableUpdateService.class));
+        }
+    }
+}
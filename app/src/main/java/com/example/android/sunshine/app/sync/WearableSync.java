@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.DateEngine;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Pushes the forecast to the watch from the forecast snapshot, once the data behind it has been
+ * committed, over the shared {@link WearableConnection}.
+ *
+ * The encoded forecast is hashed, and a push is only made when the hash differs from that of the
+ * last push the data layer accepted, so syncs that bring nothing new don't wake the watch.  The
+ * push is only marked urgent while the watch face is visible, which the face publishes as a data
+ * item of its own, with the time it did; a state older than {@link #FACE_STATE_MAX_AGE_MS} is
+ * taken as not visible, since a face that dies doesn't get to say so.  Otherwise the data layer
+ * delivers it when it suits the battery.
+ *
+ * Counts of pushes sent and suppressed are kept with the hash and logged with each push.
+ *
+ * Pushing blocks on the data layer, so this must not be called from the UI thread.
+ */
+final class WearableSync {
+    private static final String LOG_TAG = WearableSync.class.getSimpleName();
+
+    static final String WEATHER_PATH = "/weather-details";
+    static final String KEY_FORECAST = "forecast";
+
+    // Published by the watch face when its visibility changes, and every six hours while it stays
+    // visible
+    static final String FACE_STATE_PATH = "/face-state";
+    static final String KEY_VISIBLE = "visible";
+    static final String KEY_UPDATED_AT = "updated_at";
+    // Allows one of the face's refreshes to go missing
+    static final long FACE_STATE_MAX_AGE_MS = TimeUnit.HOURS.toMillis(12);
+    private static final long FACE_STATE_TIMEOUT_SECONDS = 5;
+
+    // What was last pushed, kept apart from the user's settings
+    private static final String STATE_PREFS = "wearable_sync";
+    private static final String KEY_PUSHED_HASH = "pushed_hash";
+    private static final String KEY_SENT = "sent";
+    private static final String KEY_SUPPRESSED = "suppressed";
+
+    private WearableSync() {
+    }
+
+    /**
+     * Pushes the forecast unless the watch already has it.  Does nothing at all unless a watch
+     * running our face is reachable; it gets the forecast once it connects, see
+     * {@link WearableNodeListenerService}.
+     *
+     * @return true if the watch has the current forecast, whether pushed now or before
+     */
+    static boolean push(Context context) {
+        WearableConnection connection = WearableConnection.get(context);
+        if (!connection.hasCapableNode()) {
+            Log.d(LOG_TAG, "No watch with the face reachable, not pushing");
+            return false;
+        }
+        GoogleApiClient googleApiClient = connection.acquire();
+        try {
+            return googleApiClient != null && push(context, googleApiClient);
+        } finally {
+            connection.release();
+        }
+    }
+
+    private static boolean push(Context context, GoogleApiClient googleApiClient) {
+        byte[] forecast = encodeForecast(context);
+        if (forecast == null) {
+            return false;
+        }
+        long hash = hash(forecast);
+        SharedPreferences state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+        if (state.contains(KEY_PUSHED_HASH) && state.getLong(KEY_PUSHED_HASH, 0) == hash) {
+            int suppressed = state.getInt(KEY_SUPPRESSED, 0) + 1;
+            state.edit().putInt(KEY_SUPPRESSED, suppressed).apply();
+            Log.d(LOG_TAG, "Forecast unchanged, not pushed; " + describeCounts(state));
+            return true;
+        }
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_PATH);
+        putDataMapRequest.getDataMap().putByteArray(KEY_FORECAST, forecast);
+        PutDataRequest request = putDataMapRequest.asPutDataRequest();
+        boolean urgent = isFaceVisible(googleApiClient);
+        if (urgent) {
+            request.setUrgent();
+        }
+        DataApi.DataItemResult result =
+                Wearable.DataApi.putDataItem(googleApiClient, request).await();
+        if (!result.getStatus().isSuccess()) {
+            Log.e(LOG_TAG, "Failed to send data! " + result.getStatus());
+            return false;
+        }
+        int sent = state.getInt(KEY_SENT, 0) + 1;
+        state.edit().putLong(KEY_PUSHED_HASH, hash).putInt(KEY_SENT, sent).apply();
+        Log.d(LOG_TAG, "Forecast pushed" + (urgent ? " urgently" : "") + "; "
+                + describeCounts(state));
+        return true;
+    }
+
+    /**
+     * Encodes the forecast from today on with {@link WeatherPayload}.  The watch draws the icons
+     * from its own resources and formats the temperatures itself.
+     *
+     * @return the forecast, or null if the snapshot has no weather for today at the preferred
+     * location.
+     */
+    static byte[] encodeForecast(Context context) {
+        ForecastSnapshot snapshot = ForecastSnapshot.open(context);
+        if (null == snapshot) {
+            return null;
+        }
+        int location = snapshot.findLocation(Utility.getPreferredLocation(context));
+        if (location == -1) {
+            return null;
+        }
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int firstDay = snapshot.findFirstDay(location, today);
+        if (firstDay == snapshot.getDayCount(location)
+                || snapshot.getDate(location, firstDay) != today) {
+            return null;
+        }
+
+        int dayCount = Math.min(snapshot.getDayCount(location) - firstDay,
+                WeatherPayload.MAX_DAYS);
+        int[] weatherIds = new int[dayCount];
+        double[] maxTemps = new double[dayCount];
+        double[] minTemps = new double[dayCount];
+        for (int i = 0; i < dayCount; i++) {
+            weatherIds[i] = snapshot.getWeatherId(location, firstDay + i);
+            maxTemps[i] = snapshot.getMaxTemp(location, firstDay + i);
+            minTemps[i] = snapshot.getMinTemp(location, firstDay + i);
+        }
+        return WeatherPayload.encode(DateEngine.getJulianDay(today),
+                Utility.isMetric(context), weatherIds, maxTemps, minTemps);
+    }
+
+    static long hash(byte[] forecast) {
+        CRC32 crc = new CRC32();
+        crc.update(forecast, 0, forecast.length);
+        return crc.getValue();
+    }
+
+    // Whether any watch has lately reported the face as visible
+    private static boolean isFaceVisible(GoogleApiClient googleApiClient) {
+        Uri uri = new Uri.Builder()
+                .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(FACE_STATE_PATH)
+                .build();
+        DataItemBuffer items = Wearable.DataApi.getDataItems(googleApiClient, uri)
+                .await(FACE_STATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        try {
+            if (!items.getStatus().isSuccess()) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            for (DataItem item : items) {
+                DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
+                if (dataMap.getBoolean(KEY_VISIBLE)
+                        && now - dataMap.getLong(KEY_UPDATED_AT) < FACE_STATE_MAX_AGE_MS) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            items.release();
+        }
+    }
+
+    private static String describeCounts(SharedPreferences state) {
+        return state.getInt(KEY_SENT, 0) + " sent, " + state.getInt(KEY_SUPPRESSED, 0)
+                + " suppressed";
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * Pushes the forecast to the watch from the forecast snapshot, e.g. after the units changed,
+ * without going to the database or the network.  See {@link WearableSync}.
+ */
+public class WearableUpdateService extends IntentService {
+    public WearableUpdateService() {
+        super("WearableUpdateService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        WearableSync.push(this);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the forecast sent to the watch as one small byte array: a header followed by a fixed
+ * width record per day.  The watch module has the matching decoder.
+ *
+ * Temperatures are Celsius in tenths of a degree, and the units flag says how the user wants
+ * them shown.  Readers go by the record size in the header, so a later version may append
+ * fields to each record without breaking watches that only know the earlier ones.
+ */
+final class WeatherPayload {
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8;
+    static final int HEADER_VERSION = 0;
+    static final int HEADER_FLAGS = 1;
+    static final int HEADER_DAY_COUNT = 2;
+    static final int HEADER_RECORD_SIZE = 3;
+    static final int HEADER_FIRST_JULIAN_DAY = 4;
+
+    static final int FLAG_METRIC = 0x01;
+
+    static final int DAY_RECORD_SIZE = 6;
+    static final int DAY_WEATHER_ID = 0;
+    static final int DAY_MAX_TEMP = 2;
+    static final int DAY_MIN_TEMP = 4;
+
+    /**
+     * The most days sent, a week is as much as the watch has room to show.
+     */
+    static final int MAX_DAYS = 7;
+
+    private WeatherPayload() {
+    }
+
+    /**
+     * @param firstJulianDay the julian day of the first record
+     * @param isMetric       whether the user wants Celsius
+     * @param weatherIds     per day; only the first {@link #MAX_DAYS} are sent
+     * @param maxTemps       per day, in Celsius
+     * @param minTemps       per day, in Celsius
+     */
+    static byte[] encode(int firstJulianDay, boolean isMetric, int[] weatherIds,
+                         double[] maxTemps, double[] minTemps) {
+        int dayCount = Math.min(weatherIds.length, MAX_DAYS);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + dayCount * DAY_RECORD_SIZE);
+        buffer.put(HEADER_VERSION, (byte) VERSION);
+        buffer.put(HEADER_FLAGS, (byte) (isMetric ? FLAG_METRIC : 0));
+        buffer.put(HEADER_DAY_COUNT, (byte) dayCount);
+        buffer.put(HEADER_RECORD_SIZE, (byte) DAY_RECORD_SIZE);
+        buffer.putInt(HEADER_FIRST_JULIAN_DAY, firstJulianDay);
+        for (int day = 0; day < dayCount; day++) {
+            int offset = HEADER_SIZE + day * DAY_RECORD_SIZE;
+            buffer.putShort(offset + DAY_WEATHER_ID, (short) weatherIds[day]);
+            buffer.putShort(offset + DAY_MAX_TEMP, toTenths(maxTemps[day]));
+            buffer.putShort(offset + DAY_MIN_TEMP, toTenths(minTemps[day]));
+        }
+        return buffer.array();
+    }
+
+    private static short toTenths(double temperature) {
+        long tenths = Math.round(temperature * 10);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tenths));
+    }
+}
@@ -2,120 +2,221 @@ package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Parcel;
 import android.util.Log;
+import android.util.SparseArray;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
-
-import java.util.concurrent.ExecutionException;
+import com.example.android.sunshine.app.data.WeatherCursor;
+import com.example.android.sunshine.app.image.ImagePipeline;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
+ *
+ * Icons are decoded once per data set change, so binding a row is only a lookup.  To see how
+ * long rows take to bind and how much each sends over binder, run
+ * {@code adb shell setprop log.tag.SunshineWidget DEBUG}.
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
+    // Tags checked with isLoggable can't be longer than 23 characters
+    private static final String STATS_TAG = "SunshineWidget";
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            private WeatherCursor data = null;
+            // When the preferred location is in the snapshot we read straight from it instead
+            private ForecastSnapshot snapshot = null;
+            private int snapshotLocation;
+            private int snapshotFirstDay;
+            private int snapshotCount;
+
+            // Size of the icon in each row
+            private int iconSize;
+            // The art pack image of each condition in the data set, none with local graphics
+            private final SparseArray<Bitmap> icons = new SparseArray<Bitmap>();
+
+            // Binding stats for the current data set, only kept when STATS_TAG is loggable
+            private boolean logStats;
+            private int rowsBound;
+            private long totalBindNanos;
+            private long maxBindNanos;
+            private long totalParcelBytes;
+            private int maxParcelBytes;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
             }
 
             @Override
             public void onDataSetChanged() {
+                logBindStats();
+                logStats = Log.isLoggable(STATS_TAG, Log.DEBUG);
                 if (data != null) {
                     data.close();
+                    data = null;
                 }
+                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                snapshot = ForecastSnapshot.open(DetailWidgetRemoteViewsService.this);
+                snapshotLocation = snapshot == null ? -1 : snapshot.findLocation(location);
+                if (snapshotLocation != -1) {
+                    snapshotFirstDay = snapshot.findFirstDay(snapshotLocation,
+                            WeatherContract.normalizeDate(System.currentTimeMillis()));
+                    snapshotCount = snapshot.getDayCount(snapshotLocation) - snapshotFirstDay;
+                    loadIcons();
+                    return;
+                }
+                snapshot = null;
+
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
+                data = WeatherCursor.query(getContentResolver(),
+                        weatherForLocationUri,
+                        WeatherCursor.FORECAST_PROJECTION,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                loadIcons();
+            }
+
+            /*
+                Decodes the icon of every condition in the data set, downsampled to the row's
+                icon size.  The pipeline caches them by condition and size, so a condition seen
+                on several days, or in the last data set, is only decoded once.
+             */
+            private void loadIcons() {
+                icons.clear();
+                if (Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    // Rows point at the resources, which the host loads itself
+                    return;
+                }
+                long start = System.nanoTime();
+                ImagePipeline pipeline = ImagePipeline.get(DetailWidgetRemoteViewsService.this);
+                int count = getCount();
+                for (int position = 0; position < count; position++) {
+                    int weatherId;
+                    if (snapshot != null) {
+                        weatherId = snapshot.getWeatherId(snapshotLocation,
+                                snapshotFirstDay + position);
+                    } else if (data.moveToPosition(position)) {
+                        weatherId = data.getWeatherId();
+                    } else {
+                        break;
+                    }
+                    if (icons.indexOfKey(weatherId) < 0) {
+                        icons.put(weatherId, pipeline.getRemoteArt(
+                                ImagePipeline.CONSUMER_WIDGET, weatherId, iconSize));
+                    }
+                }
+                if (logStats) {
+                    Log.d(STATS_TAG, "Loaded " + icons.size() + " icons for " + count
+                            + " rows in " + (System.nanoTime() - start) / 1000000 + "ms");
+                }
+            }
+
+            private void logBindStats() {
+                if (logStats && rowsBound > 0) {
+                    Log.d(STATS_TAG, "Bound " + rowsBound + " rows: "
+                            + totalBindNanos / rowsBound / 1000 + "us average, "
+                            + maxBindNanos / 1000 + "us max; "
+                            + totalParcelBytes / rowsBound + " bytes average, "
+                            + maxParcelBytes + " bytes max over binder");
+                }
+                rowsBound = 0;
+                totalBindNanos = 0;
+                maxBindNanos = 0;
+                totalParcelBytes = 0;
+                maxParcelBytes = 0;
+            }
+
+            // Counts how long the row took to bind and how big it is when sent to the host
+            private void recordBind(RemoteViews views, long start) {
+                long bindNanos = System.nanoTime() - start;
+                Parcel parcel = Parcel.obtain();
+                views.writeToParcel(parcel, 0);
+                int parcelBytes = parcel.dataSize();
+                parcel.recycle();
+                rowsBound++;
+                totalBindNanos += bindNanos;
+                maxBindNanos = Math.max(maxBindNanos, bindNanos);
+                totalParcelBytes += parcelBytes;
+                maxParcelBytes = Math.max(maxParcelBytes, parcelBytes);
             }
 
             @Override
             public void onDestroy() {
+                logBindStats();
+                icons.clear();
                 if (data != null) {
                     data.close();
                     data = null;
                 }
+                snapshot = null;
             }
 
             @Override
             public int getCount() {
+                if (snapshot != null) {
+                    return snapshotCount;
+                }
                 return data == null ? 0 : data.getCount();
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                if (position == AdapterView.INVALID_POSITION) {
+                    return null;
+                }
+                long start = logStats ? System.nanoTime() : 0;
+                int weatherId;
+                String description;
+                long dateInMillis;
+                double maxTemp;
+                double minTemp;
+                if (snapshot != null) {
+                    if (position >= snapshotCount) {
+                        return null;
+                    }
+                    int day = snapshotFirstDay + position;
+                    weatherId = snapshot.getWeatherId(snapshotLocation, day);
+                    description = snapshot.getShortDesc(snapshotLocation, day);
+                    dateInMillis = snapshot.getDate(snapshotLocation, day);
+                    maxTemp = snapshot.getMaxTemp(snapshotLocation, day);
+                    minTemp = snapshot.getMinTemp(snapshotLocation, day);
+                } else if (data != null && data.moveToPosition(position)) {
+                    weatherId = data.getWeatherId();
+                    description = data.getShortDesc();
+                    dateInMillis = data.getDate();
+                    maxTemp = data.getMaxTemp();
+                    minTemp = data.getMinTemp();
+                } else {
                     return null;
                 }
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                Bitmap weatherArtImage = icons.get(weatherId);
                 String formattedDate = Utility.getFriendlyDayString(
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
                 String formattedMaxTemperature =
                         Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
                 String formattedMinTemperature =
@@ -141,6 +242,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                if (logStats) {
+                    recordBind(views, start);
+                }
                 return views;
             }
 
@@ -161,8 +265,10 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                if (snapshot != null && position < snapshotCount)
+                    return snapshot.getDate(snapshotLocation, snapshotFirstDay + position);
+                if (data != null && data.moveToPosition(position))
+                    return data.getDate();
                 return position;
             }
 
@@ -27,27 +27,35 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 /**
  * Provider for a horizontally expandable widget showing today's weather.
  *
- * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * Delegates widget updating to {@link WidgetUpdateCoordinator} to ensure that
+ * data retrieval is done on a background thread.  It also brings the Detail widgets up to date
+ * when the data changes, so each change is only read once.
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The host may have nothing to show, e.g. after a reboot, so push whatever the content
+        WidgetUpdateCoordinator.requestUpdate(context, true);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // Only pushes if the new size calls for another layout
+        WidgetUpdateCoordinator.requestUpdate(context, false);
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetUpdateCoordinator.forget(context, appWidgetIds);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetUpdateCoordinator.requestUpdate(context, false);
         }
     }
 }
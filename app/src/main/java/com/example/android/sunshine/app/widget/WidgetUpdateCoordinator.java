@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherCursor;
+
+/**
+ * IntentService which brings all Today and Detail widgets up to date with the latest data.
+ *
+ * The forecast is read once per update, for every widget.  What each widget shows is hashed
+ * along with its layout, and the hash is kept in preferences, so a widget is only pushed to when
+ * what it shows has changed.  A Today widget that keeps its layout gets a partial update with
+ * just its data, and a Detail widget's list is only told to reload when one of its rows changed.
+ */
+public class WidgetUpdateCoordinator extends IntentService {
+    private static final String EXTRA_FORCE = "force";
+
+    // Per widget state, kept apart from the user's settings
+    private static final String STATE_PREFS = "widget_state";
+    private static final String KEY_HASH = "hash_";
+    private static final String KEY_LAYOUT = "layout_";
+
+    public WidgetUpdateCoordinator() {
+        super("WidgetUpdateCoordinator");
+    }
+
+    /**
+     * Updates the widgets whose content has changed.
+     *
+     * @param force push to every widget whatever its content, e.g. because the host has asked for
+     *              an update and may have nothing to show
+     */
+    public static void requestUpdate(Context context, boolean force) {
+        context.startService(new Intent(context, WidgetUpdateCoordinator.class)
+                .putExtra(EXTRA_FORCE, force));
+    }
+
+    /**
+     * Forgets what was pushed to widgets that have been removed.
+     */
+    static void forget(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(KEY_HASH + appWidgetId).remove(KEY_LAYOUT + appWidgetId);
+        }
+        editor.apply();
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        boolean force = intent.getBooleanExtra(EXTRA_FORCE, false);
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        int[] todayWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
+                TodayWidgetProvider.class));
+        int[] detailWidgetIds = getResources().getBoolean(R.bool.widget_detail_enabled)
+                ? appWidgetManager.getAppWidgetIds(new ComponentName(this,
+                        DetailWidgetProvider.class))
+                : new int[0];
+        if (todayWidgetIds.length == 0 && detailWidgetIds.length == 0) {
+            return;
+        }
+
+        Forecast forecast = readForecast();
+        if (forecast == null) {
+            return;
+        }
+        SharedPreferences state = getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = state.edit();
+        updateTodayWidgets(appWidgetManager, todayWidgetIds, forecast, state, editor, force);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            updateDetailWidgets(appWidgetManager, detailWidgetIds, forecast, state, editor, force);
+        }
+        editor.apply();
+    }
+
+    private void updateTodayWidgets(AppWidgetManager appWidgetManager, int[] appWidgetIds,
+                                    Forecast forecast, SharedPreferences state,
+                                    SharedPreferences.Editor editor, boolean force) {
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(forecast.weatherIds[0]);
+        String description = forecast.descriptions[0];
+        String formattedMaxTemperature = Utility.formatTemperature(this, forecast.maxTemps[0]);
+        String formattedMinTemperature = Utility.formatTemperature(this, forecast.minTemps[0]);
+        int contentHash = (weatherArtResourceId + "|" + description + "|"
+                + formattedMaxTemperature + "|" + formattedMinTemperature).hashCode();
+
+        // Perform this loop procedure for each Today widget
+        for (int appWidgetId : appWidgetIds) {
+            // Find the correct layout based on the widget's width
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
+            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+            int layoutId;
+            if (widgetWidth >= largeWidth) {
+                layoutId = R.layout.widget_today_large;
+            } else if (widgetWidth >= defaultWidth) {
+                layoutId = R.layout.widget_today;
+            } else {
+                layoutId = R.layout.widget_today_small;
+            }
+            boolean sameLayout = !force && state.getInt(KEY_LAYOUT + appWidgetId, 0) == layoutId;
+            if (sameLayout && state.contains(KEY_HASH + appWidgetId)
+                    && state.getInt(KEY_HASH + appWidgetId, 0) == contentHash) {
+                continue;
+            }
+            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+
+            // Add the data to the RemoteViews
+            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+            // Content Descriptions for RemoteViews were only added in ICS MR1
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                setRemoteContentDescription(views, description);
+            }
+            views.setTextViewText(R.id.widget_description, description);
+            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+            if (sameLayout && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // The host already has the layout and its click handling, send just the data
+                partiallyUpdateWidget(appWidgetManager, appWidgetId, views);
+            } else {
+                // Create an Intent to launch MainActivity
+                Intent launchIntent = new Intent(this, MainActivity.class);
+                PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+                views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+
+                // Tell the AppWidgetManager to perform an update on the current app widget
+                appWidgetManager.updateAppWidget(appWidgetId, views);
+            }
+            editor.putInt(KEY_LAYOUT + appWidgetId, layoutId)
+                    .putInt(KEY_HASH + appWidgetId, contentHash);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void updateDetailWidgets(AppWidgetManager appWidgetManager, int[] appWidgetIds,
+                                     Forecast forecast, SharedPreferences state,
+                                     SharedPreferences.Editor editor, boolean force) {
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        // Everything the rows show: the days are named relative to today, the temperatures
+        // depend on the units, and the icons and click targets on the settings.
+        SettingsSnapshot settings = SettingsSnapshot.get(this);
+        StringBuilder content = new StringBuilder()
+                .append(WeatherContract.normalizeDate(System.currentTimeMillis()))
+                .append('|').append(settings.locationSetting)
+                .append('|').append(settings.usingLocalGraphics ? "" : settings.artPack);
+        for (int day = 0; day < forecast.count; day++) {
+            content.append('|').append(forecast.dates[day])
+                    .append('|').append(forecast.weatherIds[day])
+                    .append('|').append(forecast.descriptions[day])
+                    .append('|').append(Utility.formatTemperature(this, forecast.maxTemps[day]))
+                    .append('|').append(Utility.formatTemperature(this, forecast.minTemps[day]));
+        }
+        int contentHash = content.toString().hashCode();
+
+        int changed = 0;
+        int[] changedIds = new int[appWidgetIds.length];
+        for (int appWidgetId : appWidgetIds) {
+            if (force || !state.contains(KEY_HASH + appWidgetId)
+                    || state.getInt(KEY_HASH + appWidgetId, 0) != contentHash) {
+                changedIds[changed++] = appWidgetId;
+                editor.putInt(KEY_HASH + appWidgetId, contentHash);
+            }
+        }
+        if (changed > 0) {
+            int[] ids = new int[changed];
+            System.arraycopy(changedIds, 0, ids, 0, changed);
+            appWidgetManager.notifyAppWidgetViewDataChanged(ids, R.id.widget_list);
+        }
+    }
+
+    /*
+        Reads the days from today onwards for the preferred location, preferring the snapshot
+        over a round-trip to the ContentProvider.  Returns null if there's nothing for today.
+     */
+    private Forecast readForecast() {
+        String location = Utility.getPreferredLocation(this);
+        ForecastSnapshot snapshot = ForecastSnapshot.open(this);
+        int snapshotLocation = snapshot == null ? -1 : snapshot.findLocation(location);
+        if (snapshotLocation != -1) {
+            int today = snapshot.findFirstDay(snapshotLocation,
+                    WeatherContract.normalizeDate(System.currentTimeMillis()));
+            int count = snapshot.getDayCount(snapshotLocation) - today;
+            if (count <= 0) {
+                return null;
+            }
+            Forecast forecast = new Forecast(count);
+            for (int i = 0; i < count; i++) {
+                int day = today + i;
+                forecast.dates[i] = snapshot.getDate(snapshotLocation, day);
+                forecast.weatherIds[i] = snapshot.getWeatherId(snapshotLocation, day);
+                forecast.descriptions[i] = snapshot.getShortDesc(snapshotLocation, day);
+                forecast.maxTemps[i] = snapshot.getMaxTemp(snapshotLocation, day);
+                forecast.minTemps[i] = snapshot.getMinTemp(snapshotLocation, day);
+            }
+            return forecast;
+        }
+
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        WeatherCursor data = WeatherCursor.query(getContentResolver(), weatherForLocationUri,
+                WeatherCursor.FORECAST_PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (data.getCount() == 0) {
+                return null;
+            }
+            Forecast forecast = new Forecast(data.getCount());
+            for (int i = 0; data.moveToPosition(i); i++) {
+                forecast.dates[i] = data.getDate();
+                forecast.weatherIds[i] = data.getWeatherId();
+                forecast.descriptions[i] = data.getShortDesc();
+                forecast.maxTemps[i] = data.getMaxTemp();
+                forecast.minTemps[i] = data.getMinTemp();
+            }
+            return forecast;
+        } finally {
+            data.close();
+        }
+    }
+
+    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
+        // Prior to Jelly Bean, widgets were always their default size
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        }
+        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
+        // retrieved from the newly added App Widget Options
+        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
+        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
+        if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
+            int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+            // The width returned is in dp, but we'll convert it to pixels to match the other widths
+            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
+                    displayMetrics);
+        }
+        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void partiallyUpdateWidget(AppWidgetManager appWidgetManager, int appWidgetId,
+                                       RemoteViews views) {
+        appWidgetManager.partiallyUpdateAppWidget(appWidgetId, views);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+
+    // The days shown by the widgets, starting with today
+    private static class Forecast {
+        final int count;
+        final long[] dates;
+        final int[] weatherIds;
+        final String[] descriptions;
+        final double[] maxTemps;
+        final double[] minTemps;
+
+        Forecast(int count) {
+            this.count = count;
+            dates = new long[count];
+            weatherIds = new int[count];
+            descriptions = new String[count];
+            maxTemps = new double[count];
+            minTemps = new double[count];
+        }
+    }
+}
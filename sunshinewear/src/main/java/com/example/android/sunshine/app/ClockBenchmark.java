@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+
+/**
+ * Times drawing the clock with {@link DigitAtlas} against {@link Canvas#drawText}, for the
+ * interactive, ambient and low-bit ambient clocks.  Run once by debug builds of the watch face,
+ * after its first frame, when its log tag is at VERBOSE; results are logged.
+ */
+final class ClockBenchmark {
+
+    private static final int WARM_UP_FRAMES = 50;
+    private static final int FRAMES = 500;
+
+    private ClockBenchmark() {
+    }
+
+    static void run(String tag, Paint clockPaint) {
+        run(tag, "interactive", clockPaint, true, true);
+        run(tag, "ambient", clockPaint, false, true);
+        run(tag, "low-bit ambient", clockPaint, false, false);
+    }
+
+    private static void run(String tag, String mode, Paint clockPaint, boolean withSeconds,
+                            boolean antiAlias) {
+        Paint paint = new Paint(clockPaint);
+        paint.setAntiAlias(antiAlias);
+        DigitAtlas atlas = new DigitAtlas(paint);
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        char[] text = new char[8];
+        int length = SunshineWatchFace.formatTime(text, 23, 59, withSeconds ? 59 : -1);
+        int width = (int) Math.ceil(paint.measureText(text, 0, length)) + 2;
+        Bitmap target = Bitmap.createBitmap(width, metrics.bottom - metrics.top + 2,
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        float baseline = -metrics.top + 1;
+
+        long drawTextNanos = 0;
+        long atlasNanos = 0;
+        for (int frame = -WARM_UP_FRAMES; frame < FRAMES; frame++) {
+            // Each frame shows another time, as the clock would
+            int tick = frame + WARM_UP_FRAMES;
+            length = SunshineWatchFace.formatTime(text, tick % 24, (tick / 24) % 60,
+                    withSeconds ? tick % 60 : -1);
+
+            long start = System.nanoTime();
+            canvas.drawColor(Color.BLACK);
+            float textWidth = paint.measureText(text, 0, length);
+            canvas.drawText(text, 0, length, (width - textWidth) / 2, baseline, paint);
+            long drawText = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            canvas.drawColor(Color.BLACK);
+            float atlasWidth = atlas.measure(text, 0, length);
+            atlas.draw(canvas, text, 0, length, (width - atlasWidth) / 2, baseline);
+            long atlasDraw = System.nanoTime() - start;
+
+            if (frame >= 0) {
+                drawTextNanos += drawText;
+                atlasNanos += atlasDraw;
+            }
+        }
+        atlas.recycle();
+        target.recycle();
+
+        Log.v(tag, "Clock benchmark, " + mode + ": drawText "
+                + drawTextNanos / FRAMES / 1000f + "us, atlas "
+                + atlasNanos / FRAMES / 1000f + "us per frame over " + FRAMES + " frames");
+    }
+}
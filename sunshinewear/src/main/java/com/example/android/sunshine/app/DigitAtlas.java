@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * The digits and ':' rasterized once for a paint's text size, color, typeface and anti-aliasing,
+ * so the clock is drawn by copying cells of one bitmap rather than laying the text out from the
+ * typeface every second.  Other characters are skipped.
+ */
+class DigitAtlas {
+
+    private static final String GLYPHS = "0123456789:";
+    private static final int COLON = 10;
+    // Room around each cell so anti-aliased edges aren't clipped
+    private static final int PADDING = 1;
+
+    private final float mTextSize;
+    private final int mColor;
+    private final boolean mAntiAlias;
+    private final Typeface mTypeface;
+
+    private final Bitmap mBitmap;
+    // Per glyph: where its cell starts in the atlas, how wide it is, how far its cell starts
+    // from the pen position, and how far the pen moves after it
+    private final int[] mCellLeft = new int[GLYPHS.length()];
+    private final int[] mCellWidth = new int[GLYPHS.length()];
+    private final int[] mCellOffset = new int[GLYPHS.length()];
+    private final float[] mAdvance = new float[GLYPHS.length()];
+    // Where the baseline is in each cell
+    private final int mBaseline;
+
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+
+    DigitAtlas(Paint paint) {
+        mTextSize = paint.getTextSize();
+        mColor = paint.getColor();
+        mAntiAlias = paint.isAntiAlias();
+        mTypeface = paint.getTypeface();
+
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        mBaseline = -metrics.top + PADDING;
+        int height = metrics.bottom - metrics.top + 2 * PADDING;
+
+        Rect bounds = new Rect();
+        int width = 0;
+        for (int glyph = 0; glyph < GLYPHS.length(); glyph++) {
+            paint.getTextBounds(GLYPHS, glyph, glyph + 1, bounds);
+            mAdvance[glyph] = paint.measureText(GLYPHS, glyph, glyph + 1);
+            mCellLeft[glyph] = width;
+            mCellOffset[glyph] = bounds.left - PADDING;
+            mCellWidth[glyph] = bounds.width() + 2 * PADDING;
+            width += mCellWidth[glyph];
+        }
+
+        mBitmap = Bitmap.createBitmap(Math.max(width, 1), Math.max(height, 1),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int glyph = 0; glyph < GLYPHS.length(); glyph++) {
+            canvas.drawText(GLYPHS, glyph, glyph + 1,
+                    mCellLeft[glyph] - mCellOffset[glyph], mBaseline, paint);
+        }
+    }
+
+    /**
+     * @return true if the atlas was rasterized the way the paint would draw.
+     */
+    boolean matches(Paint paint) {
+        return paint.getTextSize() == mTextSize && paint.getColor() == mColor
+                && paint.isAntiAlias() == mAntiAlias && paint.getTypeface() == mTypeface;
+    }
+
+    /**
+     * @return the width of the text, as {@link Paint#measureText(char[], int, int)} would have it.
+     */
+    float measure(char[] text, int start, int count) {
+        float width = 0;
+        for (int i = start; i < start + count; i++) {
+            int glyph = indexOf(text[i]);
+            if (glyph >= 0) {
+                width += mAdvance[glyph];
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Draws the text with its baseline starting at (x, y), as
+     * {@link Canvas#drawText(char[], int, int, float, float, Paint)} would.
+     */
+    void draw(Canvas canvas, char[] text, int start, int count, float x, float y) {
+        // Whole pixels, so cells are copied rather than resampled
+        float pen = Math.round(x);
+        int top = Math.round(y) - mBaseline;
+        for (int i = start; i < start + count; i++) {
+            int glyph = indexOf(text[i]);
+            if (glyph < 0) {
+                continue;
+            }
+            int left = Math.round(pen) + mCellOffset[glyph];
+            mSrc.set(mCellLeft[glyph], 0, mCellLeft[glyph] + mCellWidth[glyph],
+                    mBitmap.getHeight());
+            mDst.set(left, top, left + mCellWidth[glyph], top + mBitmap.getHeight());
+            canvas.drawBitmap(mBitmap, mSrc, mDst, null);
+            pen += mAdvance[glyph];
+        }
+    }
+
+    void recycle() {
+        mBitmap.recycle();
+    }
+
+    private static int indexOf(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        return c == ':' ? COLON : -1;
+    }
+}
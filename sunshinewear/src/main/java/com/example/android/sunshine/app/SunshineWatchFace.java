@@ -22,7 +22,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -30,6 +29,7 @@ import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
@@ -41,26 +41,46 @@ import android.view.WindowInsets;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ *
+ * Drawing a frame allocates nothing once the face is up: paints and formatters are built ahead,
+ * the time is formatted into a char buffer, and text is only measured again when it changes.
+ * To check, run {@code adb shell setprop log.tag.SunshineWatchFace VERBOSE} and watch for frames
+ * logged as allocating.
+ *
+ * Everything but the time changes at most a few times a day, so it's drawn once into a layer
+ * bitmap for each mode, and each frame only copies the layer and draws the time over it.  With
+ * the log tag at DEBUG, frame times are logged for frames that had to redraw the layer and for
+ * those that didn't.
+ *
+ * The phone sends up to a week of condition ids and temperatures in Celsius as a compact
+ * {@link WeatherPayload}; the face shows today's, formatting the temperatures and drawing the icon
+ * from its own resources, see {@link WeatherConditions}.  The last weather
+ * received is kept in a {@link WeatherCache}, so a restarted face shows it from its first frames
+ * rather than waiting on the phone.
+ *
+ * The time itself is composed from a {@link DigitAtlas} for each mode, rasterized once per text
+ * size.  In debug builds with the log tag at VERBOSE, {@link ClockBenchmark} compares it with
+ * drawing the text.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
 
@@ -80,12 +100,157 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    /**
+     * The modes the static layer is drawn for, each into its own bitmap.
+     */
+    private static final int LAYER_INTERACTIVE = 0;
+    private static final int LAYER_AMBIENT = 1;
+    private static final int LAYER_LOW_BIT_AMBIENT = 2;
+    private static final int LAYER_COUNT = 3;
+
+    /**
+     * How many frames to average frame times over before logging them.
+     */
+    private static final int FRAME_STATS_INTERVAL = 60;
+
+    /**
+     * How long to wait on the data layer when telling the phone whether the face is visible.
+     */
+    private static final long FACE_STATE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * How long visibility has to settle before it's published, so flicking through notifications
+     * doesn't publish every change.
+     */
+    private static final long FACE_STATE_DEBOUNCE_MS = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * How often the face state is published again while the face stays visible.  The phone
+     * ignores a state older than twelve hours, in case the face died without publishing it was
+     * gone.
+     */
+    private static final long FACE_STATE_REFRESH_MS = TimeUnit.HOURS.toMillis(6);
+
 
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    /**
+     * Formats the time as "h:mm:ss", or "h:mm" when second is negative, without allocating.
+     *
+     * @return the number of chars written to the buffer
+     */
+    static int formatTime(char[] buffer, int hour, int minute, int second) {
+        int length = 0;
+        if (hour >= 10) {
+            buffer[length++] = (char) ('0' + hour / 10);
+        }
+        buffer[length++] = (char) ('0' + hour % 10);
+        buffer[length++] = ':';
+        buffer[length++] = (char) ('0' + minute / 10);
+        buffer[length++] = (char) ('0' + minute % 10);
+        if (second >= 0) {
+            buffer[length++] = ':';
+            buffer[length++] = (char) ('0' + second / 10);
+            buffer[length++] = (char) ('0' + second % 10);
+        }
+        return length;
+    }
+
+    /**
+     * Where everything on the face goes, worked out when the surface, the insets or what's shown
+     * changes, so drawing a frame only reads it.  Never modified once built, a change means a new
+     * layout.
+     */
+    static final class FaceLayout {
+        final int width;
+        final int height;
+        final boolean isRound;
+        final float centerX;
+        final float timeY;
+        final float dateX;
+        final float dateY;
+        final float separatorStartX;
+        final float separatorEndX;
+        final float separatorY;
+        final float highTemperatureX;
+        final float lowTemperatureX;
+        final float temperaturesY;
+        // Where the weather icon is scaled into, empty if there is none
+        final Rect iconRect;
+
+        /**
+         * @param offsets       the vertical offsets from the center of the time, date,
+         *                      temperatures and icon, and the separator's half width
+         * @param dateWidth     the measured width of the date text
+         * @param highWidth     the measured width of the high temperature text
+         * @param lowWidth      the measured width of the low temperature text
+         * @param iconWidth     the weather icon's width, 0 if there is no icon
+         * @param iconHeight    the weather icon's height, 0 if there is no icon
+         * @param iconSize      the size of the square the icon is scaled to fit
+         */
+        FaceLayout(int width, int height, boolean isRound, Offsets offsets, float dateWidth,
+                   float highWidth, float lowWidth, int iconWidth, int iconHeight, int iconSize) {
+            this.width = width;
+            this.height = height;
+            this.isRound = isRound;
+            centerX = width / 2f;
+            float centerY = height / 2f;
+
+            timeY = centerY - offsets.timeY;
+            dateX = centerX - dateWidth / 2;
+            dateY = centerY - offsets.dateY;
+            separatorStartX = centerX - offsets.separatorHalfWidth;
+            separatorEndX = centerX + offsets.separatorHalfWidth;
+            separatorY = centerY;
+
+            temperaturesY = centerY + offsets.temperaturesY;
+            // Temperatures sit halfway out from the center, of the screen's width when it's
+            // square and of the chord they're drawn on when it's round, so they stay on screen.
+            float halfSpan = centerX;
+            if (isRound) {
+                float radius = Math.min(width, height) / 2f;
+                float dy = Math.min(Math.abs(offsets.temperaturesY), radius);
+                halfSpan = (float) Math.sqrt(radius * radius - dy * dy);
+            }
+            highTemperatureX = centerX - halfSpan / 2 - highWidth / 2;
+            lowTemperatureX = centerX + halfSpan / 2 - lowWidth / 2;
+
+            if (iconWidth > 0 && iconHeight > 0) {
+                float scale = Math.min((float) iconSize / iconWidth, (float) iconSize / iconHeight);
+                int scaledWidth = Math.round(iconWidth * scale);
+                int scaledHeight = Math.round(iconHeight * scale);
+                int left = Math.round(centerX - scaledWidth / 2f);
+                int top = Math.round(centerY + offsets.iconY);
+                iconRect = new Rect(left, top, left + scaledWidth, top + scaledHeight);
+            } else {
+                iconRect = new Rect();
+            }
+        }
+    }
+
+    /**
+     * The face's offsets, loaded from resources.
+     */
+    static final class Offsets {
+        final float timeY;
+        final float dateY;
+        final float temperaturesY;
+        final float iconY;
+        final float separatorHalfWidth;
+
+        Offsets(float timeY, float dateY, float temperaturesY, float iconY,
+                float separatorHalfWidth) {
+            this.timeY = timeY;
+            this.dateY = dateY;
+            this.temperaturesY = temperaturesY;
+            this.iconY = iconY;
+            this.separatorHalfWidth = separatorHalfWidth;
+        }
+    }
+
     private static class EngineHandler extends Handler {
         private final WeakReference<SunshineWatchFace.Engine> mWeakReference;
 
@@ -123,26 +288,87 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         // Data
         private GoogleApiClient mGoogleApiClient;
         Calendar mCalendar;
-        Asset mWeatherIDAsset;
+        // The weather as the phone sent it, null if there is none
+        WeatherCache.Weather mWeather;
         Bitmap mWeatherIcon;
+        WeatherIconLoader mIconLoader;
         String mHighTemperature;
         String mLowTemperature;
+        // When the weather shown was received, 0 if there is none
+        long mWeatherReceivedAt;
         // Draw resources
         Paint mTempHighPaint;
         Paint mTempLowPaint;
         Paint mDatePaint;
-        float mDateYOffset;
-        float mTimeYOffset;
-        float mSeparatorYOffset;
-        float mTemperaturesYOffset;
-        float mIconYOffset;
-        int mCenterX;
-        int mScreenHeight;
-        int mScreenWidth;
-        int mLeftBound;
-        int mRightBound;
-
-
+        Paint mSeparatorPaint;
+        Paint mAmbientTempPaint;
+        Paint mIconPaint;
+        float mHighTemperatureWidth;
+        float mLowTemperatureWidth;
+        Offsets mOffsets;
+        int mIconSize;
+        boolean mIsRound;
+        int mSurfaceWidth;
+        int mSurfaceHeight;
+        // What the draw path reads positions from, null until the surface size is known
+        FaceLayout mLayout;
+
+        // "h:mm:ss" at most, formatted in place every frame
+        final char[] mTimeChars = new char[8];
+        int mTimeLength;
+        float mTimeWidth;
+        // The time and mode mTimeChars holds, -1 when it has to be formatted again
+        int mTimeKey = -1;
+        // The clock's digits for each mode, rasterized when first needed
+        final DigitAtlas[] mDigitAtlases = new DigitAtlas[LAYER_COUNT];
+        boolean mClockBenchmarked;
+        final Runnable mRunClockBenchmark = new Runnable() {
+            @Override
+            public void run() {
+                ClockBenchmark.run(TAG, mTextPaint);
+            }
+        };
+        // The visibility last published, null before the first
+        Boolean mPublishedVisible;
+        final Runnable mPublishFaceState = new Runnable() {
+            @Override
+            public void run() {
+                boolean visible = isVisible();
+                if (mPublishedVisible == null || mPublishedVisible != visible) {
+                    publishFaceState(visible);
+                }
+            }
+        };
+        final Runnable mRefreshFaceState = new Runnable() {
+            @Override
+            public void run() {
+                publishFaceState(true);
+            }
+        };
+        // Publishes the face state on a thread of its own, so icon loads never queue behind it
+        final ExecutorService mFaceStateExecutor = Executors.newSingleThreadExecutor();
+        // Only used on mFaceStateExecutor
+        GoogleApiClient mFaceStateClient;
+
+        SimpleDateFormat mDateFormat;
+        String mDateText;
+        float mDateWidth;
+        // The day mDateText is for, -1 when it has to be formatted again
+        int mDateKey = -1;
+
+        // The weather, date and separator, drawn once for each mode; see the class comment
+        final Bitmap[] mLayers = new Bitmap[LAYER_COUNT];
+        final boolean[] mLayerValid = new boolean[LAYER_COUNT];
+        final Canvas mLayerCanvas = new Canvas();
+
+        // Counts what each frame allocates, see the class comment
+        boolean mCountAllocations;
+        // Frame times since they were last logged, split by whether the layer was redrawn
+        boolean mLogFrameTimes;
+        int mBlitFrames;
+        long mBlitFrameNanos;
+        int mRedrawFrames;
+        long mRedrawFrameNanos;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -156,6 +382,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 mTime.clear(intent.getStringExtra("time-zone"));
                 mTime.setToNow();
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                mDateFormat.setTimeZone(TimeZone.getDefault());
+                mDateKey = -1;
                 invalidate();
             }
         };
@@ -170,6 +398,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .addConnectionCallbacks(this)
                     .addOnConnectionFailedListener(this)
                     .build();
+            mFaceStateClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
+                    .addApi(Wearable.API)
+                    .build();
 
             // http://stackoverflow.com/questions/34444088/how-do-i-transfer-an-android-asset-without-blocking-the-ui-thread
             //retrieveDeviceNode();
@@ -186,12 +417,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mBackgroundPaint = new Paint();
             mBackgroundPaint.setColor(resources.getColor(R.color.background));
 
-            mTextPaint = new Paint();
             mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
 
             mTime = new Time();
 
             mCalendar = Calendar.getInstance();
+            mDateFormat = new SimpleDateFormat("E, dd MMM yyyy");
 
             // Sunshine stuff
             mDatePaint = createTextPaint(Color.WHITE);
@@ -199,17 +430,55 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             int tempLowColor = resources.getColor(R.color.temp_low_text);
             mTempHighPaint = createTextPaint(tempHighColor);
             mTempLowPaint = createTextPaint(tempLowColor);
+            mSeparatorPaint = createTextPaint(Color.WHITE);
+            mAmbientTempPaint = createTextPaint(Color.WHITE);
+            mIconPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
             // Offsets for Y axis
-            mDateYOffset = resources.getDimension(R.dimen.digital_date_y_offset);
-            mTimeYOffset = resources.getDimension(R.dimen.digital_time_y_offset);
-            mTemperaturesYOffset = resources.getDimension(R.dimen.digital_temperatures_y_offset);
-            mIconYOffset = resources.getDimension(R.dimen.digital_icon_y_offset);
+            mOffsets = new Offsets(
+                    resources.getDimension(R.dimen.digital_time_y_offset),
+                    resources.getDimension(R.dimen.digital_date_y_offset),
+                    resources.getDimension(R.dimen.digital_temperatures_y_offset),
+                    resources.getDimension(R.dimen.digital_icon_y_offset),
+                    resources.getDimension(R.dimen.digital_separator_half_width));
+            mIconSize = resources.getDimensionPixelSize(R.dimen.digital_icon_size);
+
+            mCountAllocations = Log.isLoggable(TAG, Log.VERBOSE);
+            mLogFrameTimes = Log.isLoggable(TAG, Log.DEBUG);
+
+            mIconLoader = new WeatherIconLoader(resources, mIconSize,
+                    new WeatherIconLoader.Listener() {
+                        @Override
+                        public void onIconLoaded(Bitmap icon) {
+                            mWeatherIcon = icon;
+                            relayout();
+                            invalidate();
+                        }
+                    });
+
+            // Show the last weather we had until the phone sends newer
+            new LoadCachedWeatherTask().execute();
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mUpdateTimeHandler.removeCallbacks(mRunClockBenchmark);
+            mUpdateTimeHandler.removeCallbacks(mPublishFaceState);
+            mUpdateTimeHandler.removeCallbacks(mRefreshFaceState);
+            releaseLayers();
+            releaseDigitAtlases();
+            if (!Boolean.FALSE.equals(mPublishedVisible)) {
+                publishFaceState(false);
+            }
+            mFaceStateExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mFaceStateClient.disconnect();
+                }
+            });
+            mFaceStateExecutor.shutdown();
+            mIconLoader.shutdown();
             super.onDestroy();
         }
 
@@ -234,6 +503,15 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 // Update time zone in case it changed while we weren't visible.
                 mTime.clear(TimeZone.getDefault().getID());
                 mTime.setToNow();
+                mCalendar.setTimeZone(TimeZone.getDefault());
+                mDateFormat.setTimeZone(TimeZone.getDefault());
+                mDateKey = -1;
+
+                if (mWeatherReceivedAt != 0 && System.currentTimeMillis() - mWeatherReceivedAt
+                        > WeatherCache.MAX_AGE_MS) {
+                    // Too old to pass for today's weather
+                    clearWeather();
+                }
             } else {
                 unregisterReceiver();
                 Wearable.DataApi.removeListener(mGoogleApiClient, this);
@@ -244,6 +522,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             // Whether the timer should be running depends on whether we're visible (as well as
             // whether we're in ambient mode), so we may need to start or stop the timer.
             updateTimer();
+
+            mUpdateTimeHandler.removeCallbacks(mPublishFaceState);
+            mUpdateTimeHandler.postDelayed(mPublishFaceState, FACE_STATE_DEBOUNCE_MS);
         }
 
         private void registerReceiver() {
@@ -270,6 +551,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             // Load resources that have alternate values for round watches.
             Resources resources = SunshineWatchFace.this.getResources();
             boolean isRound = insets.isRound();
+            mIsRound = isRound;
             mXOffset = resources.getDimension(isRound
                     ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
             float textSize = resources.getDimension(isRound
@@ -280,13 +562,34 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             // Sunshine stuff
             mTempHighPaint.setTextSize(resources.getDimension(R.dimen.temp_text_size));
             mTempLowPaint.setTextSize(resources.getDimension(R.dimen.temp_text_size));
+            mAmbientTempPaint.setTextSize(resources.getDimension(R.dimen.temp_text_size));
             mDatePaint.setTextSize(resources.getDimension(R.dimen.date_text_size));
+
+            // Text sizes changed, so everything has to be measured again
+            mTimeKey = -1;
+            mDateKey = -1;
+            measureTemperatures();
+            relayout();
+            releaseDigitAtlases();
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            if (width != mSurfaceWidth || height != mSurfaceHeight) {
+                // A new surface size means new layers
+                releaseLayers();
+                mSurfaceWidth = width;
+                mSurfaceHeight = height;
+            }
+            relayout();
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            invalidateLayers();
         }
 
         @Override
@@ -302,6 +605,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 mAmbient = inAmbientMode;
                 if (mLowBitAmbient) {
                     mTextPaint.setAntiAlias(!inAmbientMode);
+                    mAmbientTempPaint.setAntiAlias(!inAmbientMode);
                 }
             }
             invalidate();
@@ -312,94 +616,224 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            mCenterX = bounds.centerX();
-            mScreenHeight = bounds.height();
-            mScreenWidth = bounds.width();
-            mLeftBound = bounds.left;
-            mRightBound = bounds.right;
-
-            Log.d(TAG, "onDraw(): Dimensions (h,w,lb,rb): "
-                    + mScreenHeight + ", " + mScreenWidth + ", "
-                    + mLeftBound + ", " + mRightBound);
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                drawAmbient(canvas);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-                drawInteractive(canvas);
+            long frameStart = mLogFrameTimes ? System.nanoTime() : 0;
+            if (mCountAllocations) {
+                startCountingAllocations();
             }
+            if (mLayout == null) {
+                // Only if we're drawn before being told the surface size
+                mSurfaceWidth = bounds.width();
+                mSurfaceHeight = bounds.height();
+                relayout();
+            }
+
+            updateDate();
+            int mode = !isInAmbientMode() ? LAYER_INTERACTIVE
+                    : mLowBitAmbient ? LAYER_LOW_BIT_AMBIENT : LAYER_AMBIENT;
+            boolean redrawn = !mLayerValid[mode];
+            if (redrawn) {
+                drawLayer(mode);
+            }
+            canvas.drawBitmap(mLayers[mode], 0, 0, null);
             mTime.setToNow();
-            drawTime(canvas);
-            drawDate(canvas);
+            drawTime(canvas, mode);
+            if (mCountAllocations) {
+                stopCountingAllocations();
+            }
+            if (mLogFrameTimes) {
+                recordFrameTime(System.nanoTime() - frameStart, redrawn);
+            }
+            if (BuildConfig.DEBUG && mCountAllocations && !mClockBenchmarked) {
+                // Once the first frame is up, rather than holding it back
+                mClockBenchmarked = true;
+                mUpdateTimeHandler.post(mRunClockBenchmark);
+            }
+        }
+
+        /*
+            Draws everything but the time into the mode's layer, creating it if it isn't there.
+         */
+        private void drawLayer(int mode) {
+            if (mLayers[mode] == null) {
+                mLayers[mode] = Bitmap.createBitmap(mLayout.width, mLayout.height,
+                        Bitmap.Config.ARGB_8888);
+            }
+            mLayerCanvas.setBitmap(mLayers[mode]);
+            if (mode == LAYER_INTERACTIVE) {
+                mLayerCanvas.drawRect(0, 0, mLayout.width, mLayout.height, mBackgroundPaint);
+                drawInteractive(mLayerCanvas);
+            } else {
+                drawAmbient(mLayerCanvas);
+            }
+            drawDate(mLayerCanvas);
+            mLayerCanvas.setBitmap(null);
+            mLayerValid[mode] = true;
+        }
+
+        /**
+         * Works out where everything goes, after the surface, the insets, the weather or the
+         * date has changed, and has the layers drawn again with it.
+         */
+        private void relayout() {
+            if (mSurfaceWidth == 0 || mSurfaceHeight == 0) {
+                return;
+            }
+            float highWidth = mHighTemperature == null ? 0 : mHighTemperatureWidth;
+            float lowWidth = mLowTemperature == null ? 0 : mLowTemperatureWidth;
+            float dateWidth = mDateText == null ? 0 : mDateWidth;
+            int iconWidth = mWeatherIcon == null ? 0 : mWeatherIcon.getWidth();
+            int iconHeight = mWeatherIcon == null ? 0 : mWeatherIcon.getHeight();
+            mLayout = new FaceLayout(mSurfaceWidth, mSurfaceHeight, mIsRound, mOffsets,
+                    dateWidth, highWidth, lowWidth, iconWidth, iconHeight, mIconSize);
+            invalidateLayers();
+        }
+
+        /**
+         * Has every layer drawn again on its next frame, after the weather, date, insets or
+         * display properties have changed.
+         */
+        private void invalidateLayers() {
+            for (int mode = 0; mode < LAYER_COUNT; mode++) {
+                mLayerValid[mode] = false;
+            }
+        }
+
+        private void releaseLayers() {
+            for (int mode = 0; mode < LAYER_COUNT; mode++) {
+                if (mLayers[mode] != null) {
+                    mLayers[mode].recycle();
+                    mLayers[mode] = null;
+                }
+                mLayerValid[mode] = false;
+            }
+        }
+
+        private void recordFrameTime(long frameNanos, boolean redrawn) {
+            if (redrawn) {
+                mRedrawFrames++;
+                mRedrawFrameNanos += frameNanos;
+            } else {
+                mBlitFrames++;
+                mBlitFrameNanos += frameNanos;
+            }
+            if (mBlitFrames + mRedrawFrames < FRAME_STATS_INTERVAL) {
+                return;
+            }
+            Log.d(TAG, "Frame times: " + mBlitFrames + " from the layer, "
+                    + (mBlitFrames == 0 ? 0 : mBlitFrameNanos / mBlitFrames / 1000)
+                    + "us average; " + mRedrawFrames + " redrawing it, "
+                    + (mRedrawFrames == 0 ? 0 : mRedrawFrameNanos / mRedrawFrames / 1000)
+                    + "us average");
+            mBlitFrames = 0;
+            mBlitFrameNanos = 0;
+            mRedrawFrames = 0;
+            mRedrawFrameNanos = 0;
         }
 
         private void drawAmbient(Canvas canvas) {
             canvas.drawColor(Color.BLACK);
             if (mHighTemperature != null && mLowTemperature != null && mWeatherIcon != null) {
-                Paint ambientPaint = createTextPaint(Color.WHITE);
-
-                canvas.drawText(mHighTemperature,
-                        (mScreenWidth / 4) - (mTempHighPaint.measureText(mHighTemperature) / 2),
-                        (mScreenHeight / 2) + mTemperaturesYOffset,
-                        ambientPaint);
-                canvas.drawText(mLowTemperature,
-                        ((mScreenWidth / 4) * 3) - (mTempLowPaint.measureText(mLowTemperature) / 2),
-                        (mScreenHeight / 2) + mTemperaturesYOffset,
-                        ambientPaint);
+                canvas.drawText(mHighTemperature, mLayout.highTemperatureX,
+                        mLayout.temperaturesY, mAmbientTempPaint);
+                canvas.drawText(mLowTemperature, mLayout.lowTemperatureX,
+                        mLayout.temperaturesY, mAmbientTempPaint);
             }
         }
 
         private void drawInteractive(Canvas canvas) {
             if (mHighTemperature != null && mLowTemperature != null && mWeatherIcon != null) {
-
-                canvas.drawText(mHighTemperature,
-                        (mScreenWidth / 4) - (mTempHighPaint.measureText(mHighTemperature) / 2),
-                        (mScreenHeight / 2) + mTemperaturesYOffset,
-                        mTempHighPaint);
-                canvas.drawText(mLowTemperature,
-                        ((mScreenWidth / 4) * 3) - (mTempLowPaint.measureText(mLowTemperature) / 2),
-                        (mScreenHeight / 2) + mTemperaturesYOffset,
-                        mTempLowPaint);
-                // Can I scale the bitmap???
-                canvas.drawBitmap(mWeatherIcon,
-                        (mScreenWidth / 2) - (mWeatherIcon.getWidth() / 2),
-                        (mScreenHeight / 2) + mIconYOffset,
-                        null);
+                canvas.drawText(mHighTemperature, mLayout.highTemperatureX,
+                        mLayout.temperaturesY, mTempHighPaint);
+                canvas.drawText(mLowTemperature, mLayout.lowTemperatureX,
+                        mLayout.temperaturesY, mTempLowPaint);
+                canvas.drawBitmap(mWeatherIcon, null, mLayout.iconRect, mIconPaint);
             }
         }
 
-        private void drawDate(Canvas canvas) {
+        // Formats the date again when the day has changed, which calls for new layers
+        private void updateDate() {
             mCalendar.setTimeInMillis(System.currentTimeMillis());
-            String formatDate = new SimpleDateFormat("E, dd MMM yyyy")
-                    .format(mCalendar.getTime());
+            int dateKey = mCalendar.get(Calendar.YEAR) * 1000
+                    + mCalendar.get(Calendar.DAY_OF_YEAR);
+            if (dateKey != mDateKey) {
+                // Once a day, or when the time zone or text size changes
+                mDateText = mDateFormat.format(mCalendar.getTime());
+                mDateWidth = mDatePaint.measureText(mDateText);
+                mDateKey = dateKey;
+                if (mWeather != null) {
+                    // The next day's weather may already be here
+                    showToday();
+                }
+                relayout();
+            }
+        }
 
-            float dateOffset = mDatePaint.measureText(formatDate)/2;
-            Log.d(TAG, "Drawing date with X offset: " + dateOffset);
-            canvas.drawText(formatDate,
-                    (mScreenWidth / 2) - dateOffset,
-                    (mScreenHeight / 2) - mDateYOffset,
-                    mDatePaint);
+        private void drawDate(Canvas canvas) {
+            canvas.drawText(mDateText, mLayout.dateX, mLayout.dateY, mDatePaint);
 
             // Sticking in a separator mid-way to make it less jarring to look at.
-            mSeparatorYOffset = mScreenHeight / 2;
-            canvas.drawLine(mCenterX - 40,
-                    mSeparatorYOffset, mCenterX + 40,
-                    mSeparatorYOffset,
-                    createTextPaint(Color.WHITE));
+            canvas.drawLine(mLayout.separatorStartX, mLayout.separatorY,
+                    mLayout.separatorEndX, mLayout.separatorY,
+                    mSeparatorPaint);
         }
 
-        private void drawTime(Canvas canvas) {
-            String timeText = mAmbient
-                    ? String.format("%d:%02d", mTime.hour, mTime.minute)
-                    : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
+        private void drawTime(Canvas canvas, int mode) {
+            DigitAtlas atlas = mDigitAtlases[mode];
+            if (atlas == null || !atlas.matches(mTextPaint)) {
+                // Once per text size and mode
+                if (atlas != null) {
+                    atlas.recycle();
+                }
+                atlas = new DigitAtlas(mTextPaint);
+                mDigitAtlases[mode] = atlas;
+                mTimeKey = -1;
+            }
+            int timeKey = mAmbient
+                    ? mTime.hour * 60 + mTime.minute
+                    : -(((mTime.hour * 60) + mTime.minute) * 60 + mTime.second) - 2;
+            if (timeKey != mTimeKey) {
+                mTimeLength = formatTime(mTimeChars, mTime.hour, mTime.minute,
+                        mAmbient ? -1 : mTime.second);
+                mTimeWidth = atlas.measure(mTimeChars, 0, mTimeLength);
+                mTimeKey = timeKey;
+            }
+            atlas.draw(canvas, mTimeChars, 0, mTimeLength,
+                    mLayout.centerX - (mTimeWidth / 2), mLayout.timeY);
+        }
+
+        private void releaseDigitAtlases() {
+            for (int mode = 0; mode < LAYER_COUNT; mode++) {
+                if (mDigitAtlases[mode] != null) {
+                    mDigitAtlases[mode].recycle();
+                    mDigitAtlases[mode] = null;
+                }
+            }
+        }
+
+        // The temperatures only change when the phone sends new ones
+        private void measureTemperatures() {
+            if (mHighTemperature != null) {
+                mHighTemperatureWidth = mTempHighPaint.measureText(mHighTemperature);
+            }
+            if (mLowTemperature != null) {
+                mLowTemperatureWidth = mTempLowPaint.measureText(mLowTemperature);
+            }
+        }
 
-            float timeOffset = mTextPaint.measureText(timeText)/2;
-            Log.d(TAG, "Drawing time with X offset: " + timeOffset);
-            canvas.drawText(timeText,
-                    mCenterX - timeOffset,
-                    (mScreenHeight / 2) - mTimeYOffset,
-                    mTextPaint);
+        @SuppressWarnings("deprecation")
+        private void startCountingAllocations() {
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+        }
+
+        @SuppressWarnings("deprecation")
+        private void stopCountingAllocations() {
+            Debug.stopAllocCounting();
+            int allocations = Debug.getThreadAllocCount();
+            if (allocations > 0) {
+                Log.v(TAG, "Frame allocated " + allocations + " objects ("
+                        + Debug.getThreadAllocSize() + " bytes)");
+            }
         }
 
         /**
@@ -460,16 +894,19 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                         DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
 
                         // Grab data from phone
-                        mHighTemperature = dataMap.getString("high_temp");
-                        mLowTemperature = dataMap.getString("low_temp");
-                        mWeatherIDAsset = dataMap.getAsset("weather_id");
-                        new GetAssetTask().execute(mWeatherIDAsset);
-                        //long mTime = dataMap.getLong("time");
-
-                        Log.d(TAG, "Received: high: "
+                        WeatherPayload forecast =
+                                WeatherPayload.decode(dataMap.getByteArray("forecast"));
+                        if (forecast == null) {
+                            Log.w(TAG, "Ignoring weather in an unknown format");
+                            continue;
+                        }
+                        showWeather(new WeatherCache.Weather(forecast,
+                                System.currentTimeMillis()));
+                        saveWeather();
+
+                        Log.d(TAG, "Received " + forecast.getDayCount() + " days: high: "
                                 + mHighTemperature + ", low: "
-                                + mLowTemperature + ", bitmap: "
-                                + mWeatherIDAsset);
+                                + mLowTemperature);
 
                     } else if (event.getType() == DataEvent.TYPE_DELETED) {
                         // DataItem deleted
@@ -479,36 +916,115 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
         }
 
-        // http://developer.android.com/training/wearables/data-layer/assets.html
-        private class GetAssetTask extends AsyncTask<Asset, Void, Bitmap> {
+        private void showWeather(WeatherCache.Weather weather) {
+            mWeather = weather;
+            mWeatherReceivedAt = weather.receivedAt;
+            showToday();
+            relayout();
+            invalidate();
+        }
 
-            @Override
-            protected Bitmap doInBackground(Asset... assets) {
-                if (assets != null && assets[0] != null) {
-
-                    // Check that there's an active client
-                    ConnectionResult result =
-                            mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                    if (!result.isSuccess()) {
-                        return null;
+        // Formats today's weather for the face and loads its icon from the bundled resources
+        private void showToday() {
+            WeatherPayload forecast = mWeather.forecast;
+            int day = forecast.findDay(WeatherPayload.getJulianDay(System.currentTimeMillis()));
+            if (day == -1) {
+                // The forecast doesn't cover today
+                mHighTemperature = null;
+                mLowTemperature = null;
+                mIconLoader.cancel();
+                mWeatherIcon = null;
+                return;
+            }
+            mHighTemperature = WeatherConditions.formatTemperature(SunshineWatchFace.this,
+                    forecast.getMaxTemp(day), forecast.isMetric());
+            mLowTemperature = WeatherConditions.formatTemperature(SunshineWatchFace.this,
+                    forecast.getMinTemp(day), forecast.isMetric());
+            measureTemperatures();
+            int iconId = WeatherConditions.getIconResource(forecast.getWeatherId(day));
+            if (iconId == -1) {
+                mIconLoader.cancel();
+                mWeatherIcon = null;
+            } else {
+                // Nothing to do if it's the icon already shown
+                mIconLoader.load(iconId);
+            }
+        }
+
+        private void clearWeather() {
+            mWeather = null;
+            mHighTemperature = null;
+            mLowTemperature = null;
+            mIconLoader.cancel();
+            mWeatherIcon = null;
+            mWeatherReceivedAt = 0;
+            relayout();
+            invalidate();
+        }
+
+        // Stores the weather shown, off the UI thread
+        private void saveWeather() {
+            if (mWeather == null) {
+                return;
+            }
+            final WeatherCache.Weather weather = mWeather;
+            mIconLoader.runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    WeatherCache.save(SunshineWatchFace.this, weather);
+                }
+            });
+        }
+
+        // Tells the phone whether the face is visible, so it only pushes urgently while it is.
+        // The time it's published lets the phone ignore a state left behind by a face that died
+        // while visible, so it's published again now and then while the face stays visible.  Not
+        // urgent itself: the phone only reads it when it has weather to push.
+        private void publishFaceState(final boolean visible) {
+            mPublishedVisible = visible;
+            mUpdateTimeHandler.removeCallbacks(mRefreshFaceState);
+            if (visible) {
+                mUpdateTimeHandler.postDelayed(mRefreshFaceState, FACE_STATE_REFRESH_MS);
+            }
+            mFaceStateExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mFaceStateClient.isConnected()) {
+                        ConnectionResult connectionResult = mFaceStateClient.blockingConnect(
+                                FACE_STATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        if (!connectionResult.isSuccess()) {
+                            Log.w(TAG, "Couldn't publish the face state: " + connectionResult);
+                            return;
+                        }
                     }
-                    // convert asset into a file descriptor and block until it's ready
-                    InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                            mGoogleApiClient, assets[0]).await().getInputStream();
-                    // mGoogleApiClient.disconnect();
-                    if (assetInputStream == null) {
-                        Log.w(TAG, "Requested an unknown Asset.");
-                        return null;
+                    PutDataMapRequest putDataMapRequest = PutDataMapRequest.create("/face-state");
+                    putDataMapRequest.getDataMap().putBoolean("visible", visible);
+                    putDataMapRequest.getDataMap().putLong("updated_at",
+                            System.currentTimeMillis());
+                    DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mFaceStateClient,
+                            putDataMapRequest.asPutDataRequest())
+                            .await(FACE_STATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    if (!result.getStatus().isSuccess()) {
+                        Log.w(TAG, "Couldn't publish the face state: " + result.getStatus());
                     }
-                    // decode the stream into a bitmap
-                    return BitmapFactory.decodeStream(assetInputStream);
                 }
-                throw new IllegalArgumentException("Asset must be non-null");
+            });
+        }
+
+        // Loads the weather stored by the last run, see WeatherCache
+        private class LoadCachedWeatherTask extends AsyncTask<Void, Void, WeatherCache.Weather> {
+            @Override
+            protected WeatherCache.Weather doInBackground(Void... params) {
+                return WeatherCache.load(SunshineWatchFace.this);
             }
 
             @Override
-            protected void onPostExecute(Bitmap bitmap) {
-                mWeatherIcon = bitmap;
+            protected void onPostExecute(WeatherCache.Weather weather) {
+                // The phone may have been quicker
+                if (weather == null || weather.receivedAt <= mWeatherReceivedAt) {
+                    return;
+                }
+                showWeather(weather);
             }
         }
 
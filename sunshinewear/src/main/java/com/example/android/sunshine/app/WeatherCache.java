@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last weather the phone sent, kept on the watch so the face has something to draw as soon
+ * as it starts, before the phone has been heard from.  The forecast is stored as the phone sent
+ * it, in a single file that's replaced whole, so a read never sees half of an update.
+ *
+ * Reads and writes hit the disk, so they must not be made from the UI thread.
+ */
+class WeatherCache {
+    private static final String LOG_TAG = WeatherCache.class.getSimpleName();
+
+    private static final String FILE_NAME = "weather.cache";
+    private static final int VERSION = 3;
+
+    /**
+     * Weather older than this isn't shown, the day's forecast has moved on.
+     */
+    static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    // Files are only touched by one thread at a time
+    private static final Object sLock = new Object();
+
+    static class Weather {
+        final WeatherPayload forecast;
+        // When the watch received the weather
+        final long receivedAt;
+
+        Weather(WeatherPayload forecast, long receivedAt) {
+            this.forecast = forecast;
+            this.receivedAt = receivedAt;
+        }
+
+        boolean isStale(long now) {
+            return now - receivedAt > MAX_AGE_MS || receivedAt > now;
+        }
+    }
+
+    private WeatherCache() {
+    }
+
+    /**
+     * @return the stored weather, or null if there is none, it can't be read or it's stale.
+     */
+    static Weather load(Context context) {
+        synchronized (sLock) {
+            File file = new File(context.getFilesDir(), FILE_NAME);
+            if (!file.exists()) {
+                return null;
+            }
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (in.readInt() != VERSION) {
+                    return null;
+                }
+                long receivedAt = in.readLong();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                WeatherPayload forecast = WeatherPayload.decode(payload);
+                if (forecast == null) {
+                    return null;
+                }
+                Weather weather = new Weather(forecast, receivedAt);
+                return weather.isStale(System.currentTimeMillis()) ? null : weather;
+            } catch (IOException | NegativeArraySizeException e) {
+                Log.w(LOG_TAG, "Ignoring unreadable weather cache", e);
+                return null;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored weather.
+     *
+     * @return true if it was stored
+     */
+    static boolean save(Context context, Weather weather) {
+        synchronized (sLock) {
+            File file = new File(context.getFilesDir(), FILE_NAME);
+            File temp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+            DataOutputStream out = null;
+            try {
+                FileOutputStream fileOut = new FileOutputStream(temp);
+                out = new DataOutputStream(new BufferedOutputStream(fileOut));
+                out.writeInt(VERSION);
+                out.writeLong(weather.receivedAt);
+                byte[] payload = weather.forecast.getBytes();
+                out.writeInt(payload.length);
+                out.write(payload);
+                out.flush();
+                // On disk before it takes the old file's place
+                fileOut.getFD().sync();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Couldn't write the weather cache", e);
+                closeQuietly(out);
+                out = null;
+                temp.delete();
+                return false;
+            } finally {
+                closeQuietly(out);
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing we can do about it
+            }
+        }
+    }
+}
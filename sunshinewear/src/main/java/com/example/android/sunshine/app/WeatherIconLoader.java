@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the bundled weather icons, one at a time on a background thread, and decodes them at the
+ * size the face draws them at.
+ *
+ * An icon that's already shown isn't loaded again and one seen recently comes from a small cache.
+ * Starting a load cancels any load it supersedes, so icons can't land out of order.  Full size
+ * decodes all go into one reused bitmap before being scaled down.
+ *
+ * Only called from the UI thread, which is also where listeners are called.
+ */
+class WeatherIconLoader {
+    private static final String LOG_TAG = WeatherIconLoader.class.getSimpleName();
+
+    private static final int CACHE_SIZE = 4;
+
+    interface Listener {
+        /**
+         * @param icon the icon, scaled to fit the drawn size
+         */
+        void onIconLoaded(Bitmap icon);
+    }
+
+    private final Resources mResources;
+    private final int mIconSize;
+    private final Listener mListener;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Only touched from the loader thread
+    private final LruCache<Integer, Bitmap> mCache = new LruCache<Integer, Bitmap>(CACHE_SIZE);
+    private Bitmap mDecodeBitmap;
+    private final Paint mScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // The icon last asked for, 0 if none, and the load that's decoding it
+    private int mRequestedId;
+    private Future<?> mPending;
+    // Bumped with every load, so superseded ones know to give up
+    private volatile int mGeneration;
+
+    // Load latency, for the log
+    private int mLoads;
+    private int mDuplicates;
+    private int mCacheHits;
+    private long mTotalLoadMs;
+
+    WeatherIconLoader(Resources resources, int iconSize, Listener listener) {
+        mResources = resources;
+        mIconSize = iconSize;
+        mListener = listener;
+    }
+
+    /**
+     * Loads the drawable resource unless it's the one last asked for.
+     *
+     * @return false if the icon is the one last asked for, so nothing is loaded
+     */
+    boolean load(final int resourceId) {
+        if (resourceId == mRequestedId) {
+            mDuplicates++;
+            return false;
+        }
+        cancel();
+        mRequestedId = resourceId;
+        final int generation = mGeneration;
+        final long requestedAt = System.nanoTime();
+        mPending = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                boolean cached = true;
+                Bitmap icon = mCache.get(resourceId);
+                if (icon == null) {
+                    cached = false;
+                    icon = decode(resourceId);
+                    if (icon == null) {
+                        Log.w(LOG_TAG, "Couldn't decode weather icon " + resourceId);
+                        forgetFailed(resourceId, generation);
+                        return;
+                    }
+                    mCache.put(resourceId, icon);
+                }
+                deliver(icon, generation, requestedAt, cached);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Drops any load in flight and forgets the icon last asked for, so it's loaded again next
+     * time.
+     */
+    void cancel() {
+        if (mPending != null) {
+            mPending.cancel(false);
+            mPending = null;
+        }
+        mGeneration++;
+        mRequestedId = 0;
+    }
+
+    /**
+     * Runs the task on the loader thread, after any loads already started.
+     */
+    void runInBackground(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Stops the loader once the work already queued is done.  Loads still in flight are dropped
+     * rather than delivered.
+     */
+    void shutdown() {
+        cancel();
+        mExecutor.shutdown();
+    }
+
+    // On the loader thread.  Decodes the icon scaled to fit the drawn size.
+    private Bitmap decode(int resourceId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resourceId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        // The icons are already drawn for the screen's density, so only decode what's needed
+        options.inScaled = false;
+        int largest = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (largest / (sampleSize * 2) >= mIconSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inBitmap = mDecodeBitmap;
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeResource(mResources, resourceId, options);
+        } catch (IllegalArgumentException e) {
+            // Too small to decode into, make a new one
+            options.inBitmap = null;
+            decoded = BitmapFactory.decodeResource(mResources, resourceId, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+        mDecodeBitmap = decoded;
+
+        // Always a new bitmap, the decode one is reused for the next icon
+        float scale = Math.min(1f, (float) mIconSize / Math.max(decoded.getWidth(),
+                decoded.getHeight()));
+        int width = Math.max(1, Math.round(decoded.getWidth() * scale));
+        int height = Math.max(1, Math.round(decoded.getHeight() * scale));
+        Bitmap icon = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Matrix matrix = new Matrix();
+        matrix.setScale((float) width / decoded.getWidth(), (float) height / decoded.getHeight());
+        new Canvas(icon).drawBitmap(decoded, matrix, mScalePaint);
+        return icon;
+    }
+
+    // Lets the next load of an icon that failed to load go ahead
+    private void forgetFailed(final int resourceId, final int generation) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mGeneration && resourceId == mRequestedId) {
+                    mRequestedId = 0;
+                }
+            }
+        });
+    }
+
+    private void deliver(final Bitmap icon, final int generation, final long requestedAt,
+                         final boolean cached) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    // Superseded while on its way
+                    return;
+                }
+                long loadMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestedAt);
+                mLoads++;
+                mTotalLoadMs += loadMs;
+                if (cached) {
+                    mCacheHits++;
+                }
+                Log.d(LOG_TAG, "Icon loaded in " + loadMs + "ms" + (cached ? " from cache" : "")
+                        + "; " + mLoads + " loads averaging " + mTotalLoadMs / mLoads + "ms, "
+                        + mCacheHits + " from cache, " + mDuplicates + " duplicates skipped");
+                mListener.onIconLoaded(icon);
+            }
+        });
+    }
+}
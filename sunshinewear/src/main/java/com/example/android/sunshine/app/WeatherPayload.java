@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import java.nio.ByteBuffer;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The forecast as the phone sends it: one small byte array with a header and a fixed width
+ * record per day, starting with the phone's today.  The app module has the matching encoder.
+ *
+ * Temperatures are Celsius in tenths of a degree, and the units flag says how the user wants
+ * them shown.  Records are read by the size given in the header, so payloads from a later
+ * version that appends fields to each record still decode here.
+ */
+final class WeatherPayload {
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int HEADER_VERSION = 0;
+    private static final int HEADER_FLAGS = 1;
+    private static final int HEADER_DAY_COUNT = 2;
+    private static final int HEADER_RECORD_SIZE = 3;
+    private static final int HEADER_FIRST_JULIAN_DAY = 4;
+
+    private static final int FLAG_METRIC = 0x01;
+
+    private static final int DAY_RECORD_SIZE = 6;
+    private static final int DAY_WEATHER_ID = 0;
+    private static final int DAY_MAX_TEMP = 2;
+    private static final int DAY_MIN_TEMP = 4;
+
+    // The julian day of 1 January 1970
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final byte[] mBytes;
+    private final ByteBuffer mBuffer;
+    private final boolean mIsMetric;
+    private final int mDayCount;
+    private final int mRecordSize;
+    private final int mFirstJulianDay;
+
+    private WeatherPayload(byte[] bytes) {
+        mBytes = bytes;
+        mBuffer = ByteBuffer.wrap(bytes);
+        mIsMetric = (mBuffer.get(HEADER_FLAGS) & FLAG_METRIC) != 0;
+        mDayCount = mBuffer.get(HEADER_DAY_COUNT) & 0xff;
+        mRecordSize = mBuffer.get(HEADER_RECORD_SIZE) & 0xff;
+        mFirstJulianDay = mBuffer.getInt(HEADER_FIRST_JULIAN_DAY);
+    }
+
+    /**
+     * @return the forecast, or null if the bytes aren't a forecast this version can read.
+     */
+    static WeatherPayload decode(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_SIZE || bytes[HEADER_VERSION] < 1) {
+            return null;
+        }
+        int dayCount = bytes[HEADER_DAY_COUNT] & 0xff;
+        int recordSize = bytes[HEADER_RECORD_SIZE] & 0xff;
+        if (recordSize < DAY_RECORD_SIZE || bytes.length < HEADER_SIZE + dayCount * recordSize) {
+            return null;
+        }
+        return new WeatherPayload(bytes);
+    }
+
+    /**
+     * @return the julian day the millis fall on in the watch's time zone, as the phone counts
+     * days.
+     */
+    static int getJulianDay(long millis) {
+        long localMillis = millis + TimeZone.getDefault().getOffset(millis);
+        return (int) (localMillis / DAY_IN_MILLIS) + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * @return the payload as it was sent, for storing.
+     */
+    byte[] getBytes() {
+        return mBytes;
+    }
+
+    boolean isMetric() {
+        return mIsMetric;
+    }
+
+    int getDayCount() {
+        return mDayCount;
+    }
+
+    /**
+     * @return the index of the day's record, or -1 if the forecast doesn't cover it.
+     */
+    int findDay(int julianDay) {
+        int day = julianDay - mFirstJulianDay;
+        return day >= 0 && day < mDayCount ? day : -1;
+    }
+
+    int getWeatherId(int day) {
+        return mBuffer.getShort(recordOffset(day) + DAY_WEATHER_ID);
+    }
+
+    /**
+     * @return the day's high in Celsius.
+     */
+    double getMaxTemp(int day) {
+        return mBuffer.getShort(recordOffset(day) + DAY_MAX_TEMP) / 10.0;
+    }
+
+    /**
+     * @return the day's low in Celsius.
+     */
+    double getMinTemp(int day) {
+        return mBuffer.getShort(recordOffset(day) + DAY_MIN_TEMP) / 10.0;
+    }
+
+    private int recordOffset(int day) {
+        return HEADER_SIZE + day * mRecordSize;
+    }
+}